@@ -38,7 +38,16 @@ changelog {
     keepUnreleasedSection.set(true)
 }
 
+// JMH benchmarks for the plugin's core data paths: ./gradlew jmh [-PjmhArgs="<JMH options>"]
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += output + compileClasspath
+}
+
 dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+
     intellijPlatform {
         val type: String = providers.gradleProperty("platformType").get()
         val version: String = providers.gradleProperty("platformVersion").get()
@@ -125,6 +134,14 @@ tasks {
         distributionType = Wrapper.DistributionType.BIN
     }
 
+    register<JavaExec>("jmh") {
+        group = "verification"
+        description = "Runs the JMH benchmarks in src/jmh."
+        classpath = jmh.runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        args(providers.gradleProperty("jmhArgs").orElse("").get().split(" ").filter { it.isNotBlank() })
+    }
+
     register<DefaultTask>("verifyWrapperVersion") {
         // Wire expected version as a declared input so the action doesn't capture Project
         val expectedVersion = providers.gradleProperty("gradleVersion").orElse("")
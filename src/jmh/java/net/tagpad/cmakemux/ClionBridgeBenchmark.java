@@ -0,0 +1,121 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.project.Project;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CMakeMuxClionBridge} against stub classes shaped like CMakeSettings/CMakeWorkspace,
+ * compared with the uncached reflection the preset handler used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClionBridgeBenchmark {
+
+    public static final class StubProfile {
+        private final String name;
+        private boolean enabled;
+
+        StubProfile(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean getEnabled() {
+            return enabled;
+        }
+    }
+
+    public static final class StubSettings {
+        static final StubSettings INSTANCE = new StubSettings();
+        private List<StubProfile> profiles = new ArrayList<>();
+
+        public static StubSettings getInstance(Project project) {
+            return INSTANCE;
+        }
+
+        public List<StubProfile> getProfiles() {
+            return profiles;
+        }
+
+        public void setProfiles(List<StubProfile> profiles) {
+            this.profiles = profiles;
+        }
+    }
+
+    public static final class StubWorkspace {
+        static final StubWorkspace INSTANCE = new StubWorkspace();
+        int reloads;
+
+        public static StubWorkspace getInstance(Project project) {
+            return INSTANCE;
+        }
+
+        public void scheduleReload() {
+            reloads++;
+        }
+    }
+
+    public interface StubWorkspaceListener {
+    }
+
+    @Param({"10", "150", "1000"})
+    int profileCount;
+
+    private CMakeMuxClionBridge bridge;
+
+    @Setup
+    public void setUp() {
+        List<StubProfile> profiles = new ArrayList<>(profileCount);
+        for (int i = 0; i < profileCount; i++) profiles.add(new StubProfile("preset-" + i));
+        StubSettings.INSTANCE.setProfiles(profiles);
+        bridge = new CMakeMuxClionBridge(StubSettings.class.getName(), StubWorkspace.class.getName(),
+                "net.tagpad.cmakemux.MissingPresetLoader", StubWorkspaceListener.class.getName());
+    }
+
+    @Benchmark
+    public void bridgeToggleAllProfiles(Blackhole bh) {
+        Object settings = bridge.getSettings(null);
+        List<Object> profiles = bridge.getProfiles(settings);
+        for (Object p : profiles) {
+            bh.consume(bridge.getProfileName(p));
+            Boolean enabled = bridge.isProfileEnabled(p);
+            bridge.setProfileEnabled(p, !Boolean.TRUE.equals(enabled));
+        }
+        bridge.setProfiles(settings, profiles);
+        bridge.scheduleReload(bridge.getWorkspace(null));
+    }
+
+    /** Per-call Class.forName and member lookups, as before the bridge existed. */
+    @Benchmark
+    public void uncachedReflectionToggleAllProfiles(Blackhole bh) throws Exception {
+        Class<?> settingsClass = Class.forName(StubSettings.class.getName());
+        Object settings = settingsClass.getMethod("getInstance", Project.class).invoke(null, (Object) null);
+        List<?> profiles = (List<?>) settingsClass.getMethod("getProfiles").invoke(settings);
+        for (Object p : profiles) {
+            bh.consume(p.getClass().getMethod("getName").invoke(p));
+            Boolean enabled = (Boolean) p.getClass().getMethod("getEnabled").invoke(p);
+            Field f = p.getClass().getDeclaredField("enabled");
+            f.setAccessible(true);
+            f.set(p, !Boolean.TRUE.equals(enabled));
+        }
+        settingsClass.getMethod("setProfiles", List.class).invoke(settings, profiles);
+        Class<?> wsClass = Class.forName(StubWorkspace.class.getName());
+        Object ws = wsClass.getMethod("getInstance", Project.class).invoke(null, (Object) null);
+        Method scheduleReload = wsClass.getMethod("scheduleReload");
+        scheduleReload.invoke(ws);
+    }
+}
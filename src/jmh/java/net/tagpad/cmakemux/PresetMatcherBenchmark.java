@@ -0,0 +1,77 @@
+package net.tagpad.cmakemux;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/** Preset regexp matching against synthetic profile names: per-pattern baseline vs. the combined matcher. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PresetMatcherBenchmark {
+    private static final String[] COMPILERS = {"gcc", "clang", "msvc", "icx"};
+    private static final String[] TYPES = {"debug", "release", "relwithdebinfo", "asan", "tsan"};
+
+    @Param({"100", "1000", "5000"})
+    int profileCount;
+
+    @Param({"1", "8", "32"})
+    int regexCount;
+
+    private List<String> names;
+    private List<String> regexps;
+    private CMakeMuxPresetMatcher warmMatcher;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        names = new ArrayList<>(profileCount);
+        for (int i = 0; i < profileCount; i++) {
+            names.add("component" + (i % 97) + "-" + COMPILERS[random.nextInt(COMPILERS.length)]
+                    + "-" + TYPES[random.nextInt(TYPES.length)] + "-" + i);
+        }
+        regexps = new ArrayList<>(regexCount);
+        for (int i = 0; i < regexCount; i++) {
+            regexps.add("^component" + (i * 7 % 97) + "-" + COMPILERS[i % COMPILERS.length] + "-(debug|asan)");
+        }
+        warmMatcher = CMakeMuxPresetMatcher.compile(regexps);
+        warmMatcher.matchAll(names);
+    }
+
+    /** What the plugin did before: compile every regexp per switch and try each on each name. */
+    @Benchmark
+    public void perPatternBaseline(Blackhole bh) {
+        List<Pattern> patterns = new ArrayList<>(regexps.size());
+        for (String re : regexps) patterns.add(Pattern.compile(re, Pattern.CASE_INSENSITIVE));
+        int matched = 0;
+        for (String name : names) {
+            for (Pattern p : patterns) {
+                if (p.matcher(name).find()) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        bh.consume(matched);
+    }
+
+    @Benchmark
+    public Set<String> combinedCompileAndMatch() {
+        return CMakeMuxPresetMatcher.compile(regexps).matchAll(names);
+    }
+
+    /** Same names as last time: served from the matcher's memo. */
+    @Benchmark
+    public Set<String> combinedMemoized() {
+        return warmMatcher.matchAll(names);
+    }
+}
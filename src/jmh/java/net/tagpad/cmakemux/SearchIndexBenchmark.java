@@ -0,0 +1,45 @@
+package net.tagpad.cmakemux;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Building the popup search index and filtering with it, per keystroke. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchIndexBenchmark {
+    @Param({"100", "1000", "5000"})
+    int entryCount;
+
+    @Param({"c", "comp", "component42", "area7 lib", "cmpnt"})
+    String query;
+
+    private List<CMakeMuxEntry> entries;
+    private CMakeMuxSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(new CMakeMuxEntry("component" + i,
+                    "/work/repo/area" + (i % 50) + "/lib" + (i % 7) + "/component" + i + "/CMakeLists.txt"));
+        }
+        index = CMakeMuxSearchIndex.build(entries);
+    }
+
+    @Benchmark
+    public CMakeMuxSearchIndex build() {
+        return CMakeMuxSearchIndex.build(entries);
+    }
+
+    @Benchmark
+    public List<CMakeMuxEntry> search() {
+        return index.search(query, 500);
+    }
+}
@@ -0,0 +1,90 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.util.xmlb.XmlSerializer;
+import org.jdom.Element;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** CMakeMuxState mutations and XML (de)serialization at different list sizes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+    @Param({"10", "1000", "10000"})
+    int entryCount;
+
+    private CMakeMuxState state;
+    private Element serialized;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        // The project is only kept for service lookups, which these paths do not use
+        state = new CMakeMuxState(null);
+        for (int i = 0; i < entryCount; i++) {
+            CMakeMuxEntry e = newEntry(i);
+            e.setRegexps(List.of("^debug-" + i, "release"));
+            state.addOrReplace(e);
+        }
+        serialized = XmlSerializer.serialize(state.getState());
+    }
+
+    private static CMakeMuxEntry newEntry(int i) {
+        return new CMakeMuxEntry("component" + i, "/work/repo/components/component" + i + "/CMakeLists.txt");
+    }
+
+    private int nextIndex() {
+        cursor = (cursor + 7919) % entryCount;
+        return cursor;
+    }
+
+    @Benchmark
+    public CMakeMuxState addOrReplaceExisting() {
+        state.addOrReplace(newEntry(nextIndex()));
+        return state;
+    }
+
+    @Benchmark
+    public CMakeMuxState removeAndAddBack() {
+        int i = nextIndex();
+        CMakeMuxEntry e = newEntry(i);
+        state.removeByPath(e.getPath());
+        state.addOrReplace(e);
+        return state;
+    }
+
+    /** Replaces 100 entries in one edit, i.e. one copy and one published snapshot. */
+    @Benchmark
+    public CMakeMuxEntriesDelta batchReplace100() {
+        return state.edit(editor -> {
+            for (int n = 0; n < 100; n++) editor.addOrReplace(newEntry(nextIndex()));
+        });
+    }
+
+    @Benchmark
+    public CMakeMuxEntry findByPath() {
+        return state.findByPath(newEntry(nextIndex()).getPath());
+    }
+
+    @Benchmark
+    public Element serialize() {
+        return XmlSerializer.serialize(state.getState());
+    }
+
+    @Benchmark
+    public CMakeMuxState.State deserialize() {
+        return XmlSerializer.deserialize(serialized, CMakeMuxState.State.class);
+    }
+
+    @Benchmark
+    public CMakeMuxState loadState() {
+        CMakeMuxState loaded = new CMakeMuxState(null);
+        loaded.loadState(XmlSerializer.deserialize(serialized, CMakeMuxState.State.class));
+        return loaded;
+    }
+}
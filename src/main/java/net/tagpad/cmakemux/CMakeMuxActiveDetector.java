@@ -1,54 +1,48 @@
 package net.tagpad.cmakemux;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 
-import java.lang.reflect.Method;
-
-/** Shared helper to detect the current CMake model project and initialize the active path. */
+/**
+ * Shared helper to detect the current CMake model project and set the active path.
+ * Runs whenever the CMake workspace finishes loading (see {@link CMakeMuxWorkspaceWatcher}), never on a timer.
+ */
 final class CMakeMuxActiveDetector {
     private static final Logger LOG = Logger.getInstance(CMakeMuxActiveDetector.class);
 
     private CMakeMuxActiveDetector() {}
 
-    /** Try once to detect and set the active CMakeLists path. Returns true on success. */
-    static boolean detectAndSetActiveOnce(@NotNull Project project) {
+    /**
+     * Detect and set the active CMakeLists path from the loaded CMake model. Returns true on success.
+     * Touches the file system; call off the EDT.
+     */
+    static boolean detectAndSetActive(@NotNull Project project, @NotNull String trigger) {
+        if (project.isDisposed()) return false;
+        CMakeMuxFlightEvents.ActiveDetectionEvent event = new CMakeMuxFlightEvents.ActiveDetectionEvent();
+        event.begin();
+        event.trigger = trigger;
         try {
-            Class<?> wsClass = Class.forName("com.jetbrains.cidr.cpp.cmake.workspace.CMakeWorkspace");
-            Method getInstance = wsClass.getMethod("getInstance", Project.class);
-            Object ws = getInstance.invoke(null, project);
+            CMakeMuxClionBridge bridge = CMakeMuxClionBridge.getInstance();
+            Object ws = bridge.getWorkspace(project);
             if (ws != null) {
-                Method getModelProjectDir = wsClass.getMethod("getModelProjectDir");
-                Object dirObj = getModelProjectDir.invoke(ws);
-                if (dirObj instanceof java.io.File modelProjectDir) {
+                java.io.File modelProjectDir = bridge.getModelProjectDir(ws);
+                if (modelProjectDir != null) {
                     java.io.File f = new java.io.File(modelProjectDir, "CMakeLists.txt");
                     if (f.isFile()) {
                         CMakeMuxSelectionService.getInstance(project).setActivePath(f.getAbsolutePath());
+                        event.detected = true;
+                        event.path = f.getAbsolutePath();
                         return true;
                     }
                 }
             }
         } catch (Throwable t) {
+            event.failure = String.valueOf(t);
             LOG.debug("[CMakeMux] Detect active CMakeLists failed: " + t.getMessage(), t);
+        } finally {
+            event.commit();
         }
         return false;
     }
-
-    /** Best-effort: try once immediately, then schedule up to 'retries' attempts with 'delayMs' spacing. */
-    static void detectAndSetActiveBestEffort(@NotNull Project project, int retries, long delayMs) {
-        if (project.isDisposed()) return;
-        if (CMakeMuxSelectionService.getInstance(project).getActivePath() != null) return;
-
-        if (detectAndSetActiveOnce(project)) return;
-
-        if (retries > 0) {
-            ApplicationManager.getApplication().invokeLater(() -> {
-                if (!project.isDisposed()) {
-                    detectAndSetActiveBestEffort(project, retries - 1, delayMs);
-                }
-            });
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,223 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Warm build directories: every entry gets its own namespace below the build root, one directory per enabled profile,
+ * so switching back to an entry reuses its CMakeCache and build files.
+ * The namespaces share a disk budget; the least recently switched ones are deleted first when it is exceeded.
+ */
+@Service(Service.Level.PROJECT)
+public final class CMakeMuxBuildDirs {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxBuildDirs.class);
+
+    static final String DEFAULT_ROOT = ".cmake-mux/build";
+    // Written into every namespace this plugin creates; eviction only touches directories that have it
+    static final String MARKER_FILE = ".cmake-mux-namespace";
+    private static final Pattern NAMESPACE = Pattern.compile(".+-[0-9a-f]{8}");
+
+    private final Project project;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    public CMakeMuxBuildDirs(Project project) {
+        this.project = project;
+    }
+
+    public static CMakeMuxBuildDirs getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxBuildDirs.class);
+    }
+
+    /** Directory holding all namespaces, or null when it cannot be resolved (no project base path). */
+    public @Nullable Path getRoot() {
+        String configured = CMakeMuxState.getInstance(project).getBuildDirRoot().trim();
+        String base = project.getBasePath();
+        try {
+            if (!configured.isEmpty() && Paths.get(configured).isAbsolute()) return Paths.get(configured);
+            if (base == null) return null;
+            return Paths.get(base).resolve(configured.isEmpty() ? DEFAULT_ROOT : configured);
+        } catch (RuntimeException e) {
+            LOG.warn("[CMakeMux] Invalid build directory root '" + configured + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Build directory per profile name for the entry; empty when the root cannot be resolved. */
+    public @NotNull Map<String, File> dirsFor(@NotNull CMakeMuxEntry entry, @NotNull Collection<String> profileNames) {
+        Path root = getRoot();
+        if (root == null) return Map.of();
+        Map<String, File> dirs = new LinkedHashMap<>();
+        for (String name : profileNames) {
+            dirs.put(name, dirFor(root, entry, name));
+        }
+        return dirs;
+    }
+
+    /** Build directory of one profile for the entry, or null when the root cannot be resolved. */
+    public @Nullable File dirFor(@NotNull CMakeMuxEntry entry, @NotNull String profileName) {
+        Path root = getRoot();
+        return root != null ? dirFor(root, entry, profileName) : null;
+    }
+
+    private static File dirFor(Path root, CMakeMuxEntry entry, String profileName) {
+        return root.resolve(namespace(entry.getPath())).resolve(FileUtil.sanitizeFileName(profileName)).toFile();
+    }
+
+    /** Creates the entry's namespace with its marker file. Touches the file system; call off the EDT. */
+    public void ensureNamespace(@NotNull CMakeMuxEntry entry) {
+        Path root = getRoot();
+        if (root == null) return;
+        Path ns = root.resolve(namespace(entry.getPath()));
+        try {
+            Files.createDirectories(ns);
+            Path marker = ns.resolve(MARKER_FILE);
+            if (!Files.exists(marker)) Files.writeString(marker, entry.getPath() + '\n');
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("[CMakeMux] Cannot create warm build directory " + ns + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Turning warm build directories off: points the profiles they moved back at their own directories
+     * and reloads CMake when any changed (EDT).
+     */
+    public void restoreProfileDirs() {
+        CMakeMuxLocalState state = CMakeMuxLocalState.getInstance(project);
+        Map<String, String> originals = state.getOriginalBuildDirs();
+        if (originals.isEmpty()) return;
+        if (CMakeMuxPresetHandler.restoreBuildDirs(project, originals, getRoot()) > 0) {
+            CMakeMuxPresetHandler.scheduleCMakeReload(project);
+        }
+        state.setOriginalBuildDirs(Map.of());
+    }
+
+    // <directory name>-<path hash>: readable, and stable across renames of the entry
+    static @NotNull String namespace(@NotNull String cmakeListsPath) {
+        String path = FileUtil.toCanonicalPath(cmakeListsPath);
+        String dir = new File(path).getParentFile() != null ? new File(path).getParentFile().getName() : "";
+        String readable = dir.isEmpty() ? "root" : FileUtil.sanitizeFileName(dir);
+        return readable + "-" + String.format("%08x", path.hashCode());
+    }
+
+    /** Deletes least recently switched namespaces until the budget is met; runs in the background, once at a time. */
+    public void scheduleEviction() {
+        if (!evicting.compareAndSet(false, true)) return;
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            try {
+                evict();
+            } finally {
+                evicting.set(false);
+            }
+        });
+    }
+
+    private void evict() {
+        if (project.isDisposed()) return;
+        CMakeMuxState state = CMakeMuxState.getInstance(project);
+        Path root = getRoot();
+        if (root == null || !Files.isDirectory(root)) return;
+        long budget = Math.max(0, state.getBuildDirBudgetMb()) * 1024L * 1024L;
+
+        Map<String, CMakeMuxEntry> owners = new HashMap<>();
+        for (CMakeMuxEntry e : state.getEntries()) owners.put(namespace(e.getPath()), e);
+        List<Path> namespaces;
+        try (Stream<Path> s = Files.list(root)) {
+            // Only namespaces this plugin created; the root may be shared with anything else
+            namespaces = new ArrayList<>(s.filter(CMakeMuxBuildDirs::isOwnNamespace).toList());
+        } catch (IOException e) {
+            LOG.warn("[CMakeMux] Cannot list build directory root " + root + ": " + e.getMessage());
+            return;
+        }
+
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        for (Path ns : namespaces) {
+            long size = sizeOf(ns);
+            sizes.put(ns, size);
+            total += size;
+        }
+        if (total <= budget) return;
+
+        // Namespaces of removed entries go first, then by last switch, oldest first
+        CMakeMuxLocalState local = CMakeMuxLocalState.getInstance(project);
+        namespaces.sort(Comparator.comparingLong(ns -> {
+            CMakeMuxEntry owner = owners.get(ns.getFileName().toString());
+            return owner == null ? Long.MIN_VALUE : local.getLastSwitched(owner.getPath());
+        }));
+        for (Path ns : namespaces) {
+            if (total <= budget) break;
+            // Checked per directory; a switch may have started while measuring
+            if (isInUse(ns.getFileName().toString())) continue;
+            if (FileUtil.delete(ns.toFile())) {
+                total -= sizes.get(ns);
+                LOG.info("[CMakeMux] Evicted warm build directory " + ns + " (" + (sizes.get(ns) >> 20) + " MB).");
+            } else {
+                LOG.warn("[CMakeMux] Cannot delete warm build directory " + ns);
+            }
+        }
+        if (total > budget) {
+            LOG.info("[CMakeMux] Warm build directories still use " + (total >> 20) + " MB, over the budget of " + (budget >> 20) + " MB.");
+        }
+    }
+
+    private static boolean isOwnNamespace(Path dir) {
+        return NAMESPACE.matcher(dir.getFileName().toString()).matches() && Files.isDirectory(dir)
+                && Files.isRegularFile(dir.resolve(MARKER_FILE));
+    }
+
+    // Never delete what CLion or the background configure is (about to be) configuring into
+    private boolean isInUse(String ns) {
+        CMakeMuxSelectionService selection = CMakeMuxSelectionService.getInstance(project);
+        String active = selection.getActivePath();
+        if (active != null && ns.equals(namespace(active))) return true;
+        CMakeMuxSwitch current = selection.getCurrentSwitch();
+        if (current != null && !current.isDone() && ns.equals(namespace(current.getEntry().getPath()))) return true;
+        String configuring = CMakeMuxPreconfigure.getInstance(project).getRunningPath();
+        return configuring != null && ns.equals(namespace(configuring));
+    }
+
+    private static long sizeOf(Path dir) {
+        long[] size = {0};
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.debug("[CMakeMux] Cannot measure " + dir + ": " + e.getMessage());
+        }
+        return size[0];
+    }
+}
@@ -0,0 +1,490 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Single access point for the CLion internals used by CMake Mux.
+ * Classes and members are resolved once per IDE session into {@link MethodHandle}s. Missing members
+ * are cached as well, so a CLion build without e.g. {@code CMakePresetLoader} pays the lookup only once.
+ * Profile accessors are resolved per concrete profile class, since profiles are plain data objects.
+ * Callers get {@code null}/{@code false} back when something is not available and decide how to bail out.
+ */
+final class CMakeMuxClionBridge {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxClionBridge.class);
+
+    static final String SETTINGS_CLASS = "com.jetbrains.cidr.cpp.cmake.CMakeSettings";
+    static final String WORKSPACE_CLASS = "com.jetbrains.cidr.cpp.cmake.workspace.CMakeWorkspace";
+    static final String PRESET_LOADER_CLASS = "com.jetbrains.cidr.cpp.cmake.presets.CMakePresetLoader";
+    static final String WORKSPACE_LISTENER_CLASS = "com.jetbrains.cidr.cpp.cmake.workspace.CMakeWorkspaceListener";
+
+    private static final CMakeMuxClionBridge INSTANCE =
+            new CMakeMuxClionBridge(SETTINGS_CLASS, WORKSPACE_CLASS, PRESET_LOADER_CLASS, WORKSPACE_LISTENER_CLASS);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final String settingsClassName;
+    private final String workspaceClassName;
+    private final String presetLoaderClassName;
+    private final String workspaceListenerClassName;
+
+    // Lazily linked; a Linked instance with null members is the negative cache
+    private volatile Linked linked;
+    private final ConcurrentMap<Class<?>, ProfileAccessors> profileAccessors = new ConcurrentHashMap<>();
+
+    /** Package-private so benchmarks can link against stub classes with the same shape. */
+    CMakeMuxClionBridge(@NotNull String settingsClassName,
+                        @NotNull String workspaceClassName,
+                        @NotNull String presetLoaderClassName,
+                        @NotNull String workspaceListenerClassName) {
+        this.settingsClassName = settingsClassName;
+        this.workspaceClassName = workspaceClassName;
+        this.presetLoaderClassName = presetLoaderClassName;
+        this.workspaceListenerClassName = workspaceListenerClassName;
+    }
+
+    /** Plugin-side mirror of the CMakeWorkspaceListener callbacks CMake Mux cares about. */
+    interface WorkspaceListener {
+        void reloadingStarted();
+
+        void reloadingFinished(boolean canceled);
+
+        /** The CMake process of the running reload exited with a non-zero code. */
+        void configureFailed();
+    }
+
+    static CMakeMuxClionBridge getInstance() {
+        return INSTANCE;
+    }
+
+    // CMakeSettings
+
+    @Nullable Object getSettings(@Nullable Project project) {
+        Linked l = linked();
+        if (l.settingsGetInstance == null) {
+            LOG.warn("[CMakeMux] CMakeSettings.getInstance(Project) not available.");
+            return null;
+        }
+        return invoke(l.settingsGetInstance, project);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable List<Object> getProfiles(@NotNull Object settings) {
+        Linked l = linked();
+        if (l.settingsGetProfiles == null) {
+            LOG.warn("[CMakeMux] CMakeSettings.getProfiles() not available.");
+            return null;
+        }
+        Object res = invoke(l.settingsGetProfiles, settings);
+        return res instanceof List ? (List<Object>) res : null;
+    }
+
+    boolean setProfiles(@NotNull Object settings, @NotNull List<?> profiles) {
+        Linked l = linked();
+        if (l.settingsSetProfiles == null) {
+            LOG.warn("[CMakeMux] CMakeSettings.setProfiles(List) not available.");
+            return false;
+        }
+        try {
+            l.settingsSetProfiles.invoke(settings, profiles);
+            return true;
+        } catch (Throwable t) {
+            LOG.warn("[CMakeMux] CMakeSettings.setProfiles(List) failed", t);
+            return false;
+        }
+    }
+
+    // CMakeWorkspace
+
+    @Nullable Object getWorkspace(@Nullable Project project) {
+        Linked l = linked();
+        if (l.workspaceGetInstance == null) return null;
+        return invoke(l.workspaceGetInstance, project);
+    }
+
+    boolean scheduleReload(@NotNull Object workspace) {
+        Linked l = linked();
+        if (l.workspaceScheduleReload == null) {
+            LOG.warn("[CMakeMux] CMakeWorkspace.scheduleReload() not available.");
+            return false;
+        }
+        try {
+            l.workspaceScheduleReload.invoke(workspace);
+            return true;
+        } catch (Throwable t) {
+            LOG.debug("[CMakeMux] CMakeWorkspace.scheduleReload() failed: " + t.getMessage(), t);
+            return false;
+        }
+    }
+
+    @Nullable java.io.File getModelProjectDir(@NotNull Object workspace) {
+        Linked l = linked();
+        if (l.workspaceGetModelProjectDir == null) return null;
+        Object dir = invoke(l.workspaceGetModelProjectDir, workspace);
+        return dir instanceof java.io.File f ? f : null;
+    }
+
+    /**
+     * Subscribes to CLion's CMakeWorkspaceListener topic through a dynamic proxy.
+     * Returns false when the listener interface or its TOPIC could not be linked.
+     */
+    @SuppressWarnings("unchecked")
+    boolean subscribeWorkspaceListener(@NotNull Project project,
+                                       @NotNull Disposable parent,
+                                       @NotNull WorkspaceListener listener) {
+        Linked l = linked();
+        if (l.workspaceListenerClass == null || l.workspaceListenerTopic == null) {
+            LOG.warn("[CMakeMux] CMakeWorkspaceListener.TOPIC not available.");
+            return false;
+        }
+        Object proxy = Proxy.newProxyInstance(
+                l.workspaceListenerClass.getClassLoader(),
+                new Class<?>[]{l.workspaceListenerClass},
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "reloadingStarted" -> listener.reloadingStarted();
+                        case "reloadingFinished" -> listener.reloadingFinished(
+                                args != null && args.length > 0 && Boolean.TRUE.equals(args[0]));
+                        case "generationCMakeExited" -> {
+                            if (args != null && args.length > 0 && args[0] instanceof ProcessOutput output && output.getExitCode() != 0) {
+                                listener.configureFailed();
+                            }
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(self);
+                        }
+                        case "equals" -> {
+                            return args != null && self == args[0];
+                        }
+                        case "toString" -> {
+                            return "CMakeMux workspace listener";
+                        }
+                        default -> {
+                            // Other callbacks are not interesting
+                        }
+                    }
+                    return null;
+                });
+        project.getMessageBus().connect(parent).subscribe((Topic<Object>) l.workspaceListenerTopic, proxy);
+        return true;
+    }
+
+    // CMakePresetLoader
+
+    @Nullable Object getPresetLoader(@NotNull Project project) {
+        Linked l = linked();
+        if (l.presetLoaderClass == null) return null;
+        return project.getService(l.presetLoaderClass);
+    }
+
+    boolean loadPresets(@NotNull Object loader, boolean force) {
+        Linked l = linked();
+        if (l.presetLoaderLoad == null) {
+            LOG.warn("[CMakeMux] CMakePresetLoader.load(boolean) not available.");
+            return false;
+        }
+        try {
+            l.presetLoaderLoad.invoke(loader, force);
+            return true;
+        } catch (Throwable t) {
+            LOG.debug("[CMakeMux] CMakePresetLoader.load(boolean) failed: " + t.getMessage(), t);
+            return false;
+        }
+    }
+
+    // Profiles
+
+    /** Profile name, falling back to the display name. */
+    @Nullable String getProfileName(@NotNull Object profile) {
+        ProfileAccessors a = accessorsFor(profile.getClass());
+        String name = invokeString(a.getName, profile);
+        return name != null ? name : invokeString(a.getDisplayName, profile);
+    }
+
+    @Nullable Boolean isProfileEnabled(@NotNull Object profile) {
+        ProfileAccessors a = accessorsFor(profile.getClass());
+        if (a.getEnabled == null) return null;
+        Object v = invoke(a.getEnabled, profile);
+        return v instanceof Boolean b ? b : null;
+    }
+
+    /** Writes the backing 'enabled' field. Returns false when the field could not be linked. */
+    boolean setProfileEnabled(@NotNull Object profile, boolean enabled) {
+        ProfileAccessors a = accessorsFor(profile.getClass());
+        if (a.enabledSetter == null) return false;
+        try {
+            a.enabledSetter.invoke(profile, enabled);
+            return true;
+        } catch (Throwable t) {
+            LOG.debug("[CMakeMux] Setting profile 'enabled' failed: " + t.getMessage(), t);
+            return false;
+        }
+    }
+
+    /** The profile's build directory as configured, or null when unset or not available. */
+    @Nullable java.io.File getProfileGenerationDir(@NotNull Object profile) {
+        ProfileAccessors a = accessorsFor(profile.getClass());
+        if (a.getGenerationDir == null) return null;
+        Object v = invoke(a.getGenerationDir, profile);
+        return v instanceof java.io.File f ? f : null;
+    }
+
+    /** Writes the backing 'generationDir' field; null means CLion's default. Returns false when the field could not be linked. */
+    boolean setProfileGenerationDir(@NotNull Object profile, @Nullable java.io.File dir) {
+        ProfileAccessors a = accessorsFor(profile.getClass());
+        if (a.generationDirSetter == null) return false;
+        try {
+            a.generationDirSetter.invoke(profile, dir);
+            return true;
+        } catch (Throwable t) {
+            LOG.debug("[CMakeMux] Setting profile 'generationDir' failed: " + t.getMessage(), t);
+            return false;
+        }
+    }
+
+    /**
+     * The profile's settings as sorted {@code field=value} lines (CMake options, build type, toolchain, environment...),
+     * without 'enabled' and 'generationDir', which switching itself changes.
+     */
+    @NotNull String describeProfile(@NotNull Object profile) {
+        StringBuilder sb = new StringBuilder();
+        for (Field f : accessorsFor(profile.getClass()).settingFields) {
+            Object v;
+            try {
+                v = f.get(profile);
+            } catch (IllegalAccessException | RuntimeException e) {
+                v = "?";
+            }
+            sb.append(f.getName()).append('=').append(describeValue(v)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Stable across sessions: no identity hash codes from objects without their own toString
+    private static String describeValue(@Nullable Object v) {
+        if (v == null || v instanceof CharSequence || v instanceof Number || v instanceof Boolean || v instanceof Enum<?>
+                || v instanceof java.io.File) {
+            return String.valueOf(v);
+        }
+        if (v instanceof Map<?, ?> map) {
+            Map<String, String> sorted = new TreeMap<>();
+            map.forEach((k, val) -> sorted.put(describeValue(k), describeValue(val)));
+            return sorted.toString();
+        }
+        if (v instanceof Collection<?> c) {
+            List<String> items = new ArrayList<>();
+            for (Object item : c) items.add(describeValue(item));
+            return items.toString();
+        }
+        try {
+            if (v.getClass().getMethod("toString").getDeclaringClass() != Object.class) return v.toString();
+        } catch (NoSuchMethodException | RuntimeException ignored) {
+            // fall through
+        }
+        return v.getClass().getName();
+    }
+
+    // Linking
+
+    private Linked linked() {
+        Linked l = linked;
+        if (l == null) {
+            synchronized (this) {
+                l = linked;
+                if (l == null) {
+                    l = new Linked(this);
+                    linked = l;
+                }
+            }
+        }
+        return l;
+    }
+
+    private ProfileAccessors accessorsFor(Class<?> cls) {
+        return profileAccessors.computeIfAbsent(cls, ProfileAccessors::new);
+    }
+
+    private static final class Linked {
+        final @Nullable MethodHandle settingsGetInstance;
+        final @Nullable MethodHandle settingsGetProfiles;
+        final @Nullable MethodHandle settingsSetProfiles;
+        final @Nullable MethodHandle workspaceGetInstance;
+        final @Nullable MethodHandle workspaceScheduleReload;
+        final @Nullable MethodHandle workspaceGetModelProjectDir;
+        final @Nullable Class<?> presetLoaderClass;
+        final @Nullable MethodHandle presetLoaderLoad;
+        final @Nullable Class<?> workspaceListenerClass;
+        final @Nullable Topic<?> workspaceListenerTopic;
+
+        Linked(CMakeMuxClionBridge bridge) {
+            Class<?> settings = findClass(bridge.settingsClassName);
+            Class<?> workspace = findClass(bridge.workspaceClassName);
+            presetLoaderClass = findClass(bridge.presetLoaderClassName);
+
+            settingsGetInstance = findHandle(settings, "getInstance", Project.class);
+            settingsGetProfiles = findHandle(settings, "getProfiles");
+            settingsSetProfiles = findHandle(settings, "setProfiles", List.class);
+            workspaceGetInstance = findHandle(workspace, "getInstance", Project.class);
+            workspaceScheduleReload = findHandle(workspace, "scheduleReload");
+            workspaceGetModelProjectDir = findHandle(workspace, "getModelProjectDir");
+            presetLoaderLoad = findHandle(presetLoaderClass, "load", boolean.class);
+            workspaceListenerClass = findClass(bridge.workspaceListenerClassName);
+            workspaceListenerTopic = findStaticValue(workspaceListenerClass, "TOPIC") instanceof Topic<?> t ? t : null;
+        }
+    }
+
+    private static final class ProfileAccessors {
+        final @Nullable MethodHandle getName;
+        final @Nullable MethodHandle getDisplayName;
+        final @Nullable MethodHandle getEnabled;
+        final @Nullable MethodHandle enabledSetter;
+        final @Nullable MethodHandle getGenerationDir;
+        final @Nullable MethodHandle generationDirSetter;
+        final List<Field> settingFields;
+
+        ProfileAccessors(Class<?> cls) {
+            getName = findHandle(cls, "getName");
+            getDisplayName = findHandle(cls, "getDisplayName");
+            getEnabled = findHandle(cls, "getEnabled");
+            enabledSetter = findBooleanSetter(cls, "enabled");
+            getGenerationDir = findHandle(cls, "getGenerationDir");
+            generationDirSetter = findFileSetter(cls, "generationDir");
+            settingFields = findSettingFields(cls);
+        }
+    }
+
+    // Utility helpers
+
+    private static @Nullable Class<?> findClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.warn("[CMakeMux] " + name + " class not found.");
+            return null;
+        }
+    }
+
+    /** Resolves a method (static or virtual) into a handle; static handles take their receiver-less signature. */
+    private static @Nullable MethodHandle findHandle(@Nullable Class<?> cls, String name, Class<?>... paramTypes) {
+        if (cls == null) return null;
+        Method m = findMethod(cls, name, paramTypes);
+        if (m == null) return null;
+        try {
+            MethodHandle h = LOOKUP.unreflect(m);
+            // Uniform (Object...)Object shape keeps call sites free of CLion types
+            return h.asType(h.type().generic());
+        } catch (IllegalAccessException e) {
+            LOG.debug("[CMakeMux] Cannot link " + cls.getName() + "." + name + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static @Nullable Method findMethod(Class<?> cls, String name, Class<?>... paramTypes) {
+        try {
+            return cls.getMethod(name, paramTypes);
+        } catch (NoSuchMethodException e1) {
+            try {
+                Method m = cls.getDeclaredMethod(name, paramTypes);
+                m.setAccessible(true);
+                return m;
+            } catch (NoSuchMethodException | RuntimeException e2) {
+                for (Method m : cls.getDeclaredMethods()) {
+                    if (m.getName().equals(name) && (paramTypes.length == 0 || Arrays.equals(m.getParameterTypes(), paramTypes))) {
+                        m.setAccessible(true);
+                        return m;
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    private static @Nullable Object findStaticValue(@Nullable Class<?> cls, String name) {
+        if (cls == null) return null;
+        try {
+            return cls.getField(name).get(null);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static @Nullable MethodHandle findBooleanSetter(Class<?> cls, String name) {
+        try {
+            Field f = cls.getDeclaredField(name);
+            Class<?> t = f.getType();
+            if (t != boolean.class && t != Boolean.class) return null;
+            f.setAccessible(true);
+            MethodHandle h = LOOKUP.unreflectSetter(f);
+            return h.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static List<Field> findSettingFields(Class<?> cls) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) || f.isSynthetic()) continue;
+                if (f.getName().equals("enabled") || f.getName().equals("generationDir")) continue;
+                try {
+                    f.setAccessible(true);
+                    fields.add(f);
+                } catch (RuntimeException e) {
+                    LOG.debug("[CMakeMux] Cannot read profile field " + f.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        fields.sort(Comparator.comparing(Field::getName));
+        return fields;
+    }
+
+    private static @Nullable MethodHandle findFileSetter(Class<?> cls, String name) {
+        try {
+            Field f = cls.getDeclaredField(name);
+            if (f.getType() != java.io.File.class) return null;
+            f.setAccessible(true);
+            MethodHandle h = LOOKUP.unreflectSetter(f);
+            return h.asType(MethodType.methodType(void.class, Object.class, java.io.File.class));
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static @Nullable Object invoke(MethodHandle h, @Nullable Object arg) {
+        try {
+            return h.invoke(arg);
+        } catch (Throwable t) {
+            LOG.debug("[CMakeMux] Internal API call failed: " + t.getMessage(), t);
+            return null;
+        }
+    }
+
+    private static @Nullable String invokeString(@Nullable MethodHandle h, Object obj) {
+        if (h == null) return null;
+        Object v = invoke(h, obj);
+        return v != null ? v.toString() : null;
+    }
+}
@@ -0,0 +1,132 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Fingerprint of everything a CMake configure of an entry depends on: the inputs CMake listed for the last configure
+ * of the entry's build directories (file API, see {@link CMakeMuxFileApi}), the presets files and their include chain,
+ * the regexps, the build directory settings and the settings of the CLion profiles being configured.
+ * File contents are hashed once per modification time and size; unchanged files are not read again.
+ */
+final class CMakeMuxConfigureFingerprint {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxConfigureFingerprint.class);
+
+    // Absolute path -> content hash at the given mtime and size
+    private static final Map<String, Stamp> STAMPS = new ConcurrentHashMap<>();
+
+    private CMakeMuxConfigureFingerprint() {}
+
+    /**
+     * Computes the fingerprint; null when the entry's directory cannot be read, or when a build directory has no file API
+     * reply of a configure of this entry, so its inputs are unknown. Touches the file system; call off the EDT.
+     */
+    static @Nullable String compute(@NotNull CMakeMuxEntry entry, @NotNull String buildSettings, @NotNull String profiles,
+                                    @NotNull Collection<File> buildDirs) {
+        if (entry.getPath() == null || buildDirs.isEmpty()) return null;
+        Path dir = Paths.get(entry.getPath()).getParent();
+        if (dir == null || !Files.isDirectory(dir)) return null;
+
+        long start = System.nanoTime();
+        // Sorted by path, so the order of the inputs does not matter
+        Map<String, Long> hashes = new TreeMap<>();
+        try {
+            for (File buildDir : buildDirs) {
+                List<Path> inputs = CMakeMuxFileApi.configureInputs(buildDir, dir);
+                if (inputs == null) {
+                    LOG.debug("[CMakeMux] No configure inputs of '" + entry.getNickname() + "' known in " + buildDir);
+                    return null;
+                }
+                for (Path file : inputs) put(hashes, dir, file);
+            }
+            // Presets files reached through "include", wherever they live
+            for (File f : CMakeMuxPresetsParser.presetsFiles(dir.toFile())) put(hashes, dir, f.toPath());
+        } catch (IOException e) {
+            LOG.debug("[CMakeMux] Cannot fingerprint " + dir + ": " + e.getMessage());
+            return null;
+        }
+
+        MessageDigest digest = sha256();
+        for (Map.Entry<String, Long> e : hashes.entrySet()) {
+            update(digest, e.getKey() + '=' + Long.toHexString(e.getValue()) + '\n');
+        }
+        update(digest, "re:" + String.join("\n", entry.getRegexps()) + '\n');
+        update(digest, "exclusive:" + entry.isExclusive() + '\n');
+        update(digest, "build:" + buildSettings + '\n');
+        update(digest, "profiles:" + profiles);
+        String fingerprint = toHex(digest.digest());
+        LOG.debug("[CMakeMux] Fingerprinted " + hashes.size() + " configure inputs of '" + entry.getNickname() + "' in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        return fingerprint;
+    }
+
+    // Relative to the entry's directory where possible, so the key does not depend on how the path was spelled
+    private static void put(Map<String, Long> hashes, Path dir, Path file) throws IOException {
+        Path normalized = file.toAbsolutePath().normalize();
+        String key = normalized.startsWith(dir) ? dir.relativize(normalized).toString().replace('\\', '/') : normalized.toString();
+        if (hashes.containsKey(key)) return;
+        // A listed input that is gone now is a change as well
+        hashes.put(key, Files.isRegularFile(normalized)
+                ? hash(normalized, Files.readAttributes(normalized, BasicFileAttributes.class)) : 0L);
+    }
+
+    private static long hash(Path file, BasicFileAttributes attrs) {
+        String key = file.toString();
+        long mtime = attrs.lastModifiedTime().toMillis();
+        long size = attrs.size();
+        Stamp s = STAMPS.get(key);
+        if (s != null && s.mtime == mtime && s.size == size) return s.hash;
+
+        CRC32C crc = new CRC32C();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) crc.update(buf, 0, n);
+        } catch (IOException e) {
+            // Unreadable now; make sure it does not match a previous configure
+            return -1 - mtime;
+        }
+        long h = crc.getValue() ^ (size << 32);
+        STAMPS.put(key, new Stamp(mtime, size, h));
+        return h;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    private record Stamp(long mtime, long size, long hash) {
+    }
+}
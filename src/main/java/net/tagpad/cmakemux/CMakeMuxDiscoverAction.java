@@ -0,0 +1,60 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/** Finds standalone CMake projects in the repository and pins the ones not yet in the list. */
+public class CMakeMuxDiscoverAction extends AnAction implements DumbAware {
+    public static final String ID = "net.tagpad.cmakemux.CMakeMuxDiscoverAction";
+
+    private static final String TITLE = "Discover CMake Projects";
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabled(e.getProject() != null);
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) return;
+
+        new Task.Backgroundable(project, TITLE, true) {
+            private List<CMakeMuxEntry> found = List.of();
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                found = CMakeMuxDiscovery.discover(project, indicator);
+            }
+
+            @Override
+            public void onSuccess() {
+                if (found.isEmpty()) {
+                    Messages.showInfoMessage(project, "No new top-level CMake projects found.", TITLE);
+                    return;
+                }
+                int res = Messages.showYesNoDialog(project,
+                        "Pin " + found.size() + " discovered CMake project(s)?", TITLE, Messages.getQuestionIcon());
+                if (res != Messages.YES) return;
+
+                // One write action and one list update for all of them
+                CMakeMuxService.getInstance(project).addOrReplaceAll(found);
+                CMakeMuxToolWindowFactory.activate(project);
+            }
+        }.queue();
+    }
+}
@@ -0,0 +1,145 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.containers.CollectionFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds standalone CMake projects in the project content: every CMakeLists.txt that declares {@code project()}
+ * and whose directory is not pulled in by an {@code add_subdirectory()} of another CMakeLists.txt.
+ * Files come from the filename index; their contents are scanned in parallel straight from disk.
+ */
+final class CMakeMuxDiscovery {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxDiscovery.class);
+
+    static final String CMAKE_LISTS = "CMakeLists.txt";
+
+    private static final Pattern BRACKET_COMMENT = Pattern.compile("#\\[(=*)\\[.*?]\\1]", Pattern.DOTALL);
+    private static final Pattern LINE_COMMENT = Pattern.compile("#[^\\n]*");
+    private static final Pattern PROJECT = Pattern.compile("^\\s*project\\s*\\(", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+    private static final Pattern ADD_SUBDIRECTORY =
+            Pattern.compile("\\badd_subdirectory\\s*\\(\\s*(?:\"([^\"]*)\"|([^\\s)]+))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CURRENT_DIR_VARIABLE = Pattern.compile("\\$\\{CMAKE_CURRENT_(?:SOURCE|LIST)_DIR}");
+
+    /** What a single CMakeLists.txt says about itself. */
+    record Scanned(@NotNull String path, @NotNull String dir, boolean declaresProject, @NotNull List<String> subdirectories) {
+    }
+
+    /** New entries for standalone projects that are not pinned yet, with unique nicknames, sorted by path. */
+    static @NotNull List<CMakeMuxEntry> discover(@NotNull Project project, @NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(true);
+        indicator.setText("Looking up CMakeLists.txt files");
+        List<String> paths = DumbService.getInstance(project).runReadActionInSmartMode(() -> {
+            Collection<VirtualFile> files = FilenameIndex.getVirtualFilesByName(CMAKE_LISTS, GlobalSearchScope.projectScope(project));
+            List<String> result = new ArrayList<>(files.size());
+            for (VirtualFile vf : files) {
+                if (vf.isValid() && vf.isInLocalFileSystem()) result.add(vf.getPath());
+            }
+            return result;
+        });
+
+        indicator.setText("Scanning " + paths.size() + " CMakeLists.txt files");
+        List<Scanned> scanned = paths.parallelStream()
+                .map(p -> {
+                    indicator.checkCanceled();
+                    return scan(p);
+                })
+                .filter(Objects::nonNull)
+                .toList();
+
+        List<Scanned> topLevel = selectTopLevel(scanned);
+        LOG.info("[CMakeMux] Discovery scanned " + scanned.size() + " CMakeLists.txt, found " + topLevel.size() + " top-level projects.");
+        return toEntries(topLevel, CMakeMuxState.getInstance(project).getSnapshot());
+    }
+
+    static @Nullable Scanned scan(@NotNull String path) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(Path.of(path)), StandardCharsets.UTF_8);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("[CMakeMux] Cannot read " + path + ": " + e.getMessage());
+            return null;
+        }
+        String dir = FileUtil.toCanonicalPath(Path.of(path).getParent().toString());
+        return parse(path, dir, text);
+    }
+
+    static @NotNull Scanned parse(@NotNull String path, @NotNull String dir, @NotNull String text) {
+        String code = LINE_COMMENT.matcher(BRACKET_COMMENT.matcher(text).replaceAll("")).replaceAll("");
+        boolean declaresProject = PROJECT.matcher(code).find();
+
+        List<String> subdirectories = new ArrayList<>();
+        Matcher m = ADD_SUBDIRECTORY.matcher(code);
+        while (m.find()) {
+            String arg = m.group(1) != null ? m.group(1) : m.group(2);
+            arg = CURRENT_DIR_VARIABLE.matcher(arg).replaceAll(Matcher.quoteReplacement(dir));
+            // Directories built from other variables cannot be resolved here
+            if (arg.isEmpty() || arg.contains("${")) continue;
+            String resolved = FileUtil.toSystemIndependentName(arg);
+            if (!Path.of(resolved).isAbsolute()) resolved = dir + "/" + resolved;
+            subdirectories.add(FileUtil.toCanonicalPath(resolved));
+        }
+        return new Scanned(FileUtil.toSystemIndependentName(path), dir, declaresProject, subdirectories);
+    }
+
+    /** Files declaring a project whose directory no other file adds as a subdirectory. */
+    static @NotNull List<Scanned> selectTopLevel(@NotNull List<Scanned> scanned) {
+        Set<String> reached = CollectionFactory.createFilePathSet();
+        for (Scanned s : scanned) reached.addAll(s.subdirectories());
+
+        List<Scanned> topLevel = new ArrayList<>();
+        for (Scanned s : scanned) {
+            if (s.declaresProject() && !reached.contains(s.dir())) topLevel.add(s);
+        }
+        topLevel.sort(Comparator.comparing(Scanned::path));
+        return topLevel;
+    }
+
+    // Nickname is the directory name, qualified by its parent (then numbered) when already taken
+    private static List<CMakeMuxEntry> toEntries(List<Scanned> topLevel, CMakeMuxState.Snapshot pinned) {
+        Set<String> used = new HashSet<>();
+        for (CMakeMuxEntry e : pinned.getEntries()) used.add(e.getNickname());
+
+        List<CMakeMuxEntry> entries = new ArrayList<>();
+        for (Scanned s : topLevel) {
+            if (pinned.indexOf(s.path()) >= 0) continue;
+            Path dir = Path.of(s.dir());
+            String name = dir.getFileName() != null ? dir.getFileName().toString() : "CMakeLists";
+            String nickname = name;
+            if (used.contains(nickname) && dir.getParent() != null && dir.getParent().getFileName() != null) {
+                nickname = dir.getParent().getFileName() + "/" + name;
+            }
+            for (int n = 2; used.contains(nickname); n++) {
+                nickname = name + " (" + n + ")";
+            }
+            used.add(nickname);
+            entries.add(new CMakeMuxEntry(nickname, s.path()));
+        }
+        return entries;
+    }
+
+    private CMakeMuxDiscovery() {
+    }
+}
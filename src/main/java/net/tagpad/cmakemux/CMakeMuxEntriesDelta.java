@@ -0,0 +1,56 @@
+package net.tagpad.cmakemux;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What changed in the entry list, as changes to apply in order.
+ * Indices refer to the list as it is right before each change, so a listener mirroring the list
+ * can replay them one by one. A full delta carries no changes and means "re-read everything".
+ */
+public final class CMakeMuxEntriesDelta {
+    public enum Kind {ADDED, REMOVED, UPDATED, MOVED}
+
+    /** One change; {@code toIndex} is only meaningful for {@link Kind#MOVED}. */
+    public record Change(@NotNull Kind kind, int index, int toIndex, @NotNull CMakeMuxEntry entry) {
+    }
+
+    private static final CMakeMuxEntriesDelta FULL = new CMakeMuxEntriesDelta(List.of(), true);
+
+    private final List<Change> changes;
+    private final boolean full;
+
+    private CMakeMuxEntriesDelta(List<Change> changes, boolean full) {
+        this.changes = changes;
+        this.full = full;
+    }
+
+    public static @NotNull CMakeMuxEntriesDelta full() {
+        return FULL;
+    }
+
+    public static @NotNull CMakeMuxEntriesDelta of(@NotNull List<Change> changes) {
+        return new CMakeMuxEntriesDelta(Collections.unmodifiableList(new ArrayList<>(changes)), false);
+    }
+
+    /** True when listeners should rebuild from the state instead of replaying changes. */
+    public boolean isFull() {
+        return full;
+    }
+
+    public @NotNull List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return !full && changes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return full ? "full" : changes.toString();
+    }
+}
@@ -3,6 +3,7 @@ package net.tagpad.cmakemux;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.xmlb.annotations.Attribute;
 import com.intellij.util.xmlb.annotations.Tag;
+import com.intellij.util.xmlb.annotations.Transient;
 import com.intellij.util.xmlb.annotations.XCollection;
 import org.jetbrains.annotations.Nullable;
 
@@ -19,9 +20,16 @@ public class CMakeMuxEntry {
     @Attribute("path")
     private String path;
 
+    // Enable only the matching presets and disable all others
+    @Attribute("exclusive")
+    private boolean exclusive;
+
     // Regxp for enabling CMake presets (per entry/target)
     private List<String> regexps = new ArrayList<>();
 
+    // Compiled regexps; rebuilt lazily whenever the regexps change
+    private volatile @Nullable CMakeMuxPresetMatcher presetMatcher;
+
     // Required for XML serialization
     public CMakeMuxEntry() {
     }
@@ -31,6 +39,17 @@ public class CMakeMuxEntry {
         this.path = FileUtil.toSystemIndependentName(path);
     }
 
+    /** Copy for publishing a changed version; the compiled matcher is shared as the regexps are equal. */
+    public CMakeMuxEntry copy() {
+        CMakeMuxEntry c = new CMakeMuxEntry();
+        c.nickname = nickname;
+        c.path = path;
+        c.exclusive = exclusive;
+        c.regexps = new ArrayList<>(regexps);
+        c.presetMatcher = presetMatcher;
+        return c;
+    }
+
     public String getNickname() {
         return nickname;
     }
@@ -47,6 +66,14 @@ public class CMakeMuxEntry {
         this.path = FileUtil.toSystemIndependentName(path);
     }
 
+    public boolean isExclusive() {
+        return exclusive;
+    }
+
+    public void setExclusive(boolean exclusive) {
+        this.exclusive = exclusive;
+    }
+
     @Tag("regexps")
     @XCollection(style = XCollection.Style.v2, elementName = "re")
     public List<String> getRegexps() {
@@ -55,6 +82,19 @@ public class CMakeMuxEntry {
 
     public void setRegexps(List<String> regexps) {
         this.regexps = (regexps == null) ? new ArrayList<>() : new ArrayList<>(regexps);
+        this.presetMatcher = null;
+    }
+
+    /** Compiled matcher for {@link #getRegexps()}, cached until the regexps change. */
+    @Transient
+    public CMakeMuxPresetMatcher getPresetMatcher() {
+        CMakeMuxPresetMatcher m = presetMatcher;
+        // Also catches in-place edits of the list returned by getRegexps()
+        if (m == null || !m.getRegexps().equals(regexps)) {
+            m = CMakeMuxPresetMatcher.compile(regexps);
+            presetMatcher = m;
+        }
+        return m;
     }
 
     @Override
@@ -1,9 +1,11 @@
 package net.tagpad.cmakemux;
 
 import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
 
 public interface CMakeMuxEvents {
     Topic<CMakeMuxEvents> TOPIC = Topic.create("CMakeMux entries changed", CMakeMuxEvents.class);
 
-    void entriesChanged();
+    /** Published on the EDT, in mutation order, after the state was changed. */
+    void entriesChanged(@NotNull CMakeMuxEntriesDelta delta);
 }
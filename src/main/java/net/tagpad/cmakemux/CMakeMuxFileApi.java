@@ -0,0 +1,172 @@
+package net.tagpad.cmakemux;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Reads the files CMake itself lists as configure inputs from the CMake file API ({@code cmakeFiles} object)
+ * of a build directory. A stateless query for it is placed in every build directory a switch or the background
+ * configure is about to use, so the next configure leaves a reply.
+ */
+final class CMakeMuxFileApi {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxFileApi.class);
+
+    private static final String API_DIR = ".cmake/api/v1";
+    private static final String QUERY = "query/client-cmake-mux/cmakeFiles-v1";
+    private static final String REPLY = "reply";
+
+    private CMakeMuxFileApi() {}
+
+    /** Asks the next configure of the build directory for the cmakeFiles object. Touches the file system; call off the EDT. */
+    static void ensureQuery(@NotNull File buildDir) {
+        Path query = buildDir.toPath().resolve(API_DIR).resolve(QUERY);
+        try {
+            if (Files.exists(query)) return;
+            Files.createDirectories(query.getParent());
+            Files.createFile(query);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("[CMakeMux] Cannot create file API query " + query + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * User inputs of the last configure of {@code buildDir}: every CMakeLists.txt and included file, also outside
+     * the source tree (toolchain files, {@code include(../cmake/x.cmake)}), but neither generated files nor CMake's
+     * own modules. Null when there is no reply, or when the reply belongs to another source directory.
+     */
+    static @Nullable List<Path> configureInputs(@NotNull File buildDir, @NotNull Path sourceDir) {
+        Path reply = buildDir.toPath().resolve(API_DIR).resolve(REPLY);
+        if (!Files.isDirectory(reply)) return null;
+        try {
+            Path index = latestIndex(reply);
+            if (index == null) return null;
+            String jsonFile = cmakeFilesObject(index);
+            if (jsonFile == null) return null;
+            return readInputs(reply.resolve(jsonFile), sourceDir);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("[CMakeMux] Cannot read file API reply in " + reply + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // CMake writes a new index-<timestamp>.json per configure; the name sorting last is the current one
+    private static @Nullable Path latestIndex(Path reply) throws IOException {
+        try (Stream<Path> s = Files.list(reply)) {
+            return s.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith("index-") && name.endsWith(".json");
+            }).max(Path::compareTo).orElse(null);
+        }
+    }
+
+    // "objects": [{"kind": "cmakeFiles", "jsonFile": "..."}]
+    private static @Nullable String cmakeFilesObject(Path index) throws IOException {
+        String found = null;
+        try (Reader r = Files.newBufferedReader(index, StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(r)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!json.nextName().equals("objects")) {
+                    json.skipValue();
+                    continue;
+                }
+                json.beginArray();
+                while (json.hasNext()) {
+                    String kind = null;
+                    String file = null;
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        switch (json.nextName()) {
+                            case "kind" -> kind = readString(json);
+                            case "jsonFile" -> file = readString(json);
+                            default -> json.skipValue();
+                        }
+                    }
+                    json.endObject();
+                    if ("cmakeFiles".equals(kind) && file != null) found = file;
+                }
+                json.endArray();
+            }
+            json.endObject();
+        }
+        return found;
+    }
+
+    // "paths": {"source": ...}, "inputs": [{"path": ..., "isGenerated": ..., "isCMake": ...}]; relative paths are below the source
+    private static @Nullable List<Path> readInputs(Path file, Path sourceDir) throws IOException {
+        String source = null;
+        List<String> paths = new ArrayList<>();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(r)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "paths" -> {
+                        json.beginObject();
+                        while (json.hasNext()) {
+                            if (json.nextName().equals("source")) source = readString(json);
+                            else json.skipValue();
+                        }
+                        json.endObject();
+                    }
+                    case "inputs" -> {
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            String path = null;
+                            boolean skip = false;
+                            json.beginObject();
+                            while (json.hasNext()) {
+                                switch (json.nextName()) {
+                                    case "path" -> path = readString(json);
+                                    case "isGenerated", "isCMake" -> skip |= readBoolean(json);
+                                    default -> json.skipValue();
+                                }
+                            }
+                            json.endObject();
+                            if (path != null && !skip) paths.add(path);
+                        }
+                        json.endArray();
+                    }
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+        }
+        if (source == null) return null;
+        Path root = Paths.get(source);
+        if (!Files.isSameFile(root, sourceDir)) return null;
+
+        List<Path> inputs = new ArrayList<>(paths.size());
+        for (String p : paths) {
+            Path path = Paths.get(p);
+            inputs.add(path.isAbsolute() ? path : root.resolve(path));
+        }
+        return inputs;
+    }
+
+    private static @Nullable String readString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.STRING) return json.nextString();
+        json.skipValue();
+        return null;
+    }
+
+    private static boolean readBoolean(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.BOOLEAN) return json.nextBoolean();
+        json.skipValue();
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+package net.tagpad.cmakemux;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for switching and preset handling, so a recording can line up
+ * plugin phases with EDT freezes and GC. Events cost nothing unless a recording enables them.
+ */
+final class CMakeMuxFlightEvents {
+    private static final String CATEGORY = "CMake Mux";
+
+    private CMakeMuxFlightEvents() {}
+
+    @Name("net.tagpad.cmakemux.Switch")
+    @Label("Switch")
+    @Category(CATEGORY)
+    @Description("Switch to a CMake Mux entry, from request until the final CMake reload")
+    @StackTrace(false)
+    static final class SwitchEvent extends Event {
+        @Label("Entry")
+        String entry;
+
+        @Label("Path")
+        String path;
+
+        @Label("Last Completed Stage")
+        String completedStage;
+
+        @Label("Configure Runs")
+        int configureRuns;
+
+        @Label("Failed")
+        boolean failed;
+
+        @Label("Superseded")
+        boolean superseded;
+
+        @Label("Failure")
+        String failure;
+    }
+
+    @Name("net.tagpad.cmakemux.SwitchPhase")
+    @Label("Switch Phase")
+    @Category(CATEGORY)
+    @Description("One timed phase of a switch")
+    @StackTrace(false)
+    static final class SwitchPhaseEvent extends Event {
+        @Label("Entry")
+        String entry;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("net.tagpad.cmakemux.PresetLoad")
+    @Label("Preset Load")
+    @Category(CATEGORY)
+    @Description("CMakePresetLoader.load invoked by CMake Mux")
+    @StackTrace(false)
+    static final class PresetLoadEvent extends Event {
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    @Name("net.tagpad.cmakemux.ProfilesUpdate")
+    @Label("Profiles Update")
+    @Category(CATEGORY)
+    @Description("Enabling/disabling imported CMake profiles in CMakeSettings")
+    @StackTrace(false)
+    static final class ProfilesUpdateEvent extends Event {
+        @Label("Profiles")
+        int profileCount;
+
+        @Label("Matched")
+        int matchedCount;
+
+        @Label("Enabled")
+        int enabledCount;
+
+        @Label("Disabled")
+        int disabledCount;
+
+        @Label("Exclusive")
+        boolean exclusive;
+
+        @Label("Failure")
+        String failure;
+    }
+
+    @Name("net.tagpad.cmakemux.ActiveDetection")
+    @Label("Active Project Detection")
+    @Category(CATEGORY)
+    @Description("Attempt to detect the active CMakeLists.txt from the CMake workspace")
+    @StackTrace(false)
+    static final class ActiveDetectionEvent extends Event {
+        @Label("Trigger")
+        String trigger;
+
+        @Label("Detected")
+        boolean detected;
+
+        @Label("Path")
+        String path;
+
+        @Label("Failure")
+        String failure;
+    }
+}
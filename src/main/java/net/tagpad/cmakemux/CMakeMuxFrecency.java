@@ -0,0 +1,123 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.containers.CollectionFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranks entries by frecency: every switch adds 1 to a score that halves every {@link #HALF_LIFE_DAYS} days.
+ * The score is stored per entry in {@link CMakeMuxLocalState} as {@code ln(score) + t * ln2 / halfLife}, which does not
+ * change as time passes, so the ranking is a sorted set updated only when an entry is switched to, added or removed.
+ */
+@Service(Service.Level.PROJECT)
+public final class CMakeMuxFrecency implements Disposable {
+    static final int HALF_LIFE_DAYS = 7;
+    private static final double DECAY_PER_MS = Math.log(2) / TimeUnit.DAYS.toMillis(HALF_LIFE_DAYS);
+
+    // Highest key first; the path keeps equal keys apart
+    private static final Comparator<Ranked> ORDER = Comparator.comparingDouble(Ranked::key).reversed()
+            .thenComparing(Ranked::path);
+
+    private record Ranked(double key, String path) {
+    }
+
+    private final Project project;
+
+    // Guarded by 'this'
+    private final TreeSet<Ranked> ranking = new TreeSet<>(ORDER);
+    private final Map<String, Ranked> byPath = CollectionFactory.createFilePathMap();
+
+    public CMakeMuxFrecency(Project project) {
+        this.project = project;
+        rebuild();
+        project.getMessageBus().connect(this).subscribe(CMakeMuxEvents.TOPIC, (CMakeMuxEvents) this::onEntriesChanged);
+    }
+
+    public static CMakeMuxFrecency getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxFrecency.class);
+    }
+
+    /** Adds a switch to the entry's history and moves it in the ranking. */
+    public void recordSwitch(@NotNull CMakeMuxEntry entry) {
+        long now = System.currentTimeMillis();
+        String path = entry.getPath();
+        if (CMakeMuxState.getInstance(project).findByPath(path) == null) return;
+        CMakeMuxLocalState.getInstance(project).update(path, d -> {
+            d.frecency = addSwitch(d.frecency, d.switchCount > 0, now);
+            d.switchCount++;
+            d.lastSwitched = now;
+        });
+        reposition(path);
+    }
+
+    /** Up to {@code limit} entries of the current state, most frecent first; entries never switched to are left out. */
+    public @NotNull List<CMakeMuxEntry> top(int limit) {
+        CMakeMuxState.Snapshot snapshot = CMakeMuxState.getInstance(project).getSnapshot();
+        List<CMakeMuxEntry> result = new ArrayList<>(limit);
+        synchronized (this) {
+            for (Ranked r : ranking) {
+                if (result.size() >= limit) break;
+                CMakeMuxEntry e = snapshot.findByPath(r.path());
+                if (e != null) result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /** The key after one more switch at {@code now}: log-sum-exp of the old key and the new switch. */
+    static double addSwitch(double key, boolean hasKey, long now) {
+        double added = now * DECAY_PER_MS;
+        if (!hasKey) return added;
+        double hi = Math.max(key, added);
+        double lo = Math.min(key, added);
+        return hi + Math.log1p(Math.exp(lo - hi));
+    }
+
+    private void onEntriesChanged(CMakeMuxEntriesDelta delta) {
+        if (delta.isFull()) {
+            rebuild();
+            return;
+        }
+        // Events arrive later than the changes; rank by what the state holds now
+        CMakeMuxState.Snapshot snapshot = CMakeMuxState.getInstance(project).getSnapshot();
+        for (CMakeMuxEntriesDelta.Change c : delta.getChanges()) {
+            CMakeMuxEntry latest = snapshot.findByPath(c.entry().getPath());
+            if (latest == null) remove(c.entry().getPath());
+            else reposition(latest.getPath());
+        }
+    }
+
+    private synchronized void rebuild() {
+        ranking.clear();
+        byPath.clear();
+        for (CMakeMuxEntry e : CMakeMuxState.getInstance(project).getEntries()) reposition(e.getPath());
+    }
+
+    private synchronized void reposition(String path) {
+        remove(path);
+        CMakeMuxLocalState.EntryData local = CMakeMuxLocalState.getInstance(project).find(path);
+        if (local == null || local.switchCount <= 0) return;
+        Ranked r = new Ranked(local.frecency, path);
+        ranking.add(r);
+        byPath.put(r.path(), r);
+    }
+
+    private synchronized void remove(String path) {
+        Ranked old = byPath.remove(path);
+        if (old != null) ranking.remove(old);
+    }
+
+    @Override
+    public void dispose() {
+        // Connection is disposed with this service
+    }
+}
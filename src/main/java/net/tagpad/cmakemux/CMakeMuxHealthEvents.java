@@ -0,0 +1,13 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+
+public interface CMakeMuxHealthEvents {
+    Topic<CMakeMuxHealthEvents> TOPIC = Topic.create("CMakeMux entry health changed", CMakeMuxHealthEvents.class);
+
+    /** Published on the EDT, once per batch of file changes, with the entry paths whose health changed. */
+    void healthChanged(@NotNull Set<String> paths);
+}
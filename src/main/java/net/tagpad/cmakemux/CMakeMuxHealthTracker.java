@@ -0,0 +1,251 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.Alarm;
+import com.intellij.util.containers.CollectionFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the health of every pinned entry up to date from VFS events, so the UI never touches the file system.
+ * Relevant events are collected and evaluated together after a short quiet period;
+ * a large checkout therefore results in a single {@link CMakeMuxHealthEvents} notification.
+ */
+@Service(Service.Level.PROJECT)
+public final class CMakeMuxHealthTracker implements Disposable {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxHealthTracker.class);
+
+    private static final int DEBOUNCE_MS = 300;
+
+    public enum Health {
+        OK(null),
+        MODIFIED("CMake files or presets changed since the last switch"),
+        MISSING("CMakeLists.txt not found");
+
+        private final @Nullable String description;
+
+        Health(@Nullable String description) {
+            this.description = description;
+        }
+
+        public @Nullable String getDescription() {
+            return description;
+        }
+    }
+
+    private final Project project;
+    private final Map<String, Health> health = new ConcurrentHashMap<>();
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+
+    // Collected until the next flush
+    private final Set<String> changedFiles = ConcurrentHashMap.newKeySet(); // CMakeLists.txt / *.cmake / presets paths
+    private final Set<String> movedDirs = ConcurrentHashMap.newKeySet();    // deleted, moved or renamed directories
+    private final Set<String> recheck = ConcurrentHashMap.newKeySet();      // entry paths to re-evaluate
+
+    public CMakeMuxHealthTracker(Project project) {
+        this.project = project;
+        var connection = project.getMessageBus().connect(this);
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                collect(events);
+            }
+        });
+        connection.subscribe(CMakeMuxEvents.TOPIC, (CMakeMuxEvents) this::onEntriesChanged);
+        connection.subscribe(CMakeMuxSwitchEvents.TOPIC, (CMakeMuxSwitchEvents) this::onSwitchProgressed);
+
+        // Initial state for everything that is pinned
+        for (CMakeMuxEntry e : CMakeMuxState.getInstance(project).getEntries()) recheck.add(e.getPath());
+        schedule();
+    }
+
+    public static CMakeMuxHealthTracker getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxHealthTracker.class);
+    }
+
+    /** Last known health; OK until the entry was evaluated. Never touches the file system. */
+    public @NotNull Health getHealth(@NotNull CMakeMuxEntry entry) {
+        return health.getOrDefault(entry.getPath(), Health.OK);
+    }
+
+    private void collect(List<? extends VFileEvent> events) {
+        boolean relevant = false;
+        for (VFileEvent event : events) {
+            if (event instanceof VFileContentChangeEvent || event instanceof VFileCreateEvent
+                    || event instanceof VFileDeleteEvent || event instanceof VFileMoveEvent
+                    || (event instanceof VFilePropertyChangeEvent p && p.isRename())) {
+                relevant |= collect(event.getPath(), event);
+                if (event instanceof VFileMoveEvent m) relevant |= collect(m.getOldPath(), event);
+                if (event instanceof VFilePropertyChangeEvent p) relevant |= collect(p.getOldPath(), event);
+            }
+        }
+        if (relevant) schedule();
+    }
+
+    private boolean collect(String path, VFileEvent event) {
+        if (isWatchedFile(fileName(path))) {
+            changedFiles.add(path);
+            return true;
+        }
+        // Content changes and creations of other files cannot affect an entry
+        if (event instanceof VFileContentChangeEvent || event instanceof VFileCreateEvent) return false;
+        VirtualFile file = event.getFile();
+        if (file == null || file.isDirectory()) {
+            movedDirs.add(path);
+            return true;
+        }
+        return false;
+    }
+
+    private void onEntriesChanged(CMakeMuxEntriesDelta delta) {
+        if (delta.isFull()) {
+            for (CMakeMuxEntry e : CMakeMuxState.getInstance(project).getEntries()) recheck.add(e.getPath());
+        } else {
+            for (CMakeMuxEntriesDelta.Change c : delta.getChanges()) {
+                switch (c.kind()) {
+                    case REMOVED -> health.remove(c.entry().getPath());
+                    case MOVED -> {
+                        // Order does not affect health
+                    }
+                    default -> recheck.add(c.entry().getPath());
+                }
+            }
+        }
+        schedule();
+    }
+
+    // A successful switch is the new baseline for "modified"
+    private void onSwitchProgressed(CMakeMuxSwitch sw) {
+        if (!sw.isDone() || sw.getCompletedStage() != CMakeMuxSwitch.Stage.RELOAD_DONE) return;
+        String path = sw.getEntry().getPath();
+        if (health.replace(path, Health.MODIFIED, Health.OK)) {
+            publish(Set.of(path));
+        }
+    }
+
+    private void schedule() {
+        // Restart the quiet period; the flush picks up everything collected so far
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::flush, DEBOUNCE_MS);
+    }
+
+    private void flush() {
+        if (project.isDisposed()) return;
+        CMakeMuxState.Snapshot snapshot = CMakeMuxState.getInstance(project).getSnapshot();
+        Set<String> modified = new HashSet<>();
+        Set<String> toCheck = new HashSet<>(drain(recheck));
+
+        List<String> files = drain(changedFiles);
+        if (!files.isEmpty()) {
+            // A file changes every entry whose directory contains it, also through add_subdirectory() and include()
+            Map<String, String> entryByDir = CollectionFactory.createFilePathMap();
+            for (CMakeMuxEntry e : snapshot.getEntries()) entryByDir.put(parentPath(e.getPath()), e.getPath());
+            for (String file : files) {
+                for (String dir = parentPath(file); !dir.isEmpty(); dir = parentPath(dir)) {
+                    String entry = entryByDir.get(dir);
+                    if (entry != null) modified.add(entry);
+                }
+            }
+        }
+        toCheck.addAll(modified);
+
+        List<String> dirs = drain(movedDirs);
+        if (!dirs.isEmpty()) {
+            Set<String> dirSet = CollectionFactory.createFilePathSet();
+            dirSet.addAll(dirs);
+            for (CMakeMuxEntry e : snapshot.getEntries()) {
+                if (isUnderAny(e.getPath(), dirSet)) toCheck.add(e.getPath());
+            }
+        }
+
+        Set<String> changed = new HashSet<>();
+        LocalFileSystem fs = LocalFileSystem.getInstance();
+        for (String path : toCheck) {
+            if (snapshot.indexOf(path) < 0) continue; // unpinned meanwhile
+            Health before = health.get(path);
+            Health after;
+            if (fs.findFileByPath(path) == null) {
+                after = Health.MISSING;
+            } else if (modified.contains(path) || before == Health.MODIFIED) {
+                after = Health.MODIFIED;
+            } else {
+                after = Health.OK;
+            }
+            if (before != after) {
+                health.put(path, after);
+                changed.add(path);
+            }
+        }
+        if (!changed.isEmpty()) {
+            LOG.debug("[CMakeMux] Health changed for " + changed.size() + " entries.");
+            publish(changed);
+        }
+    }
+
+    private void publish(Set<String> paths) {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (project.isDisposed()) return;
+            project.getMessageBus().syncPublisher(CMakeMuxHealthEvents.TOPIC).healthChanged(paths);
+        });
+    }
+
+    private static List<String> drain(Set<String> set) {
+        List<String> drained = new ArrayList<>();
+        for (var it = set.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+
+    private static boolean isWatchedFile(String name) {
+        if (CMakeMuxDiscovery.CMAKE_LISTS.equals(name) || name.endsWith(".cmake")) return true;
+        for (String presets : CMakeMuxProfileSnapshot.PRESETS_FILES) {
+            if (presets.equals(name)) return true;
+        }
+        return false;
+    }
+
+    // Walks up the entry path; cheaper than testing every directory as a prefix
+    private static boolean isUnderAny(String path, Set<String> dirs) {
+        for (String p = parentPath(path); !p.isEmpty(); p = parentPath(p)) {
+            if (dirs.contains(p)) return true;
+        }
+        return false;
+    }
+
+    private static String fileName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String parentPath(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "";
+    }
+
+    @Override
+    public void dispose() {
+        // Alarm and connection are disposed with this service
+    }
+}
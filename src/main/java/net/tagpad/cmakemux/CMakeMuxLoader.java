@@ -4,33 +4,168 @@ import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.actionSystem.ex.ActionUtil;
 import com.intellij.openapi.actionSystem.impl.SimpleDataContext;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
+/**
+ * Switches CLion to a {@link CMakeMuxEntry} as a staged pipeline:
+ * resolve file, load project, presets ready, profiles enabled, reload done.
+ * Waiting between stages is driven by CMake workspace reload notifications, never by sleeping on the EDT.
+ */
 public final class CMakeMuxLoader {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxLoader.class);
+
+    // How long to wait for an action/scheduleReload to actually start a CMake reload before moving on
+    private static final long RELOAD_START_TIMEOUT_MS = 5_000;
+
+    private static final Executor EDT = r -> ApplicationManager.getApplication().invokeLater(r);
+
     private CMakeMuxLoader() {}
 
-    public static void loadEntry(Project project, CMakeMuxEntry entry) {
-        if (project == null || entry == null) return;
+    /**
+     * Starts switching to the entry right away. Returns null when nothing was started.
+     * UI callers go through {@link CMakeMuxSwitchScheduler} so rapid requests do not queue several loads.
+     */
+    public static @Nullable CMakeMuxSwitch loadEntry(Project project, CMakeMuxEntry requested) {
+        if (project == null || requested == null) return null;
+        // Use the latest published version of the entry; callers may hold an older one
+        CMakeMuxEntry stored = CMakeMuxState.getInstance(project).findByPath(requested.getPath());
+        CMakeMuxEntry entry = stored != null ? stored : requested;
+
+        CMakeMuxSwitch sw = new CMakeMuxSwitch(project, entry);
+        CMakeMuxSelectionService.getInstance(project).setCurrentSwitch(sw);
+        CMakeMuxPreconfigure.getInstance(project).stopRunning();
+        CMakeMuxFrecency.getInstance(project).recordSwitch(entry);
+
+        CMakeMuxFlightEvents.SwitchEvent event = new CMakeMuxFlightEvents.SwitchEvent();
+        event.begin();
+        event.entry = entry.getNickname();
+        event.path = entry.getPath();
 
-        String si = FileUtil.toSystemIndependentName(entry.getPath());
-        String url = VfsUtilCore.pathToUrl(si);
-        VirtualFile vf = VirtualFileManager.getInstance().findFileByUrl(url);
+        CompletableFuture
+                .supplyAsync(() -> resolveFile(sw), AppExecutorUtil.getAppExecutorService())
+                .thenApplyAsync(vf -> readProfiles(sw, vf), EDT)
+                .thenApplyAsync(inputs -> fingerprint(sw, inputs), AppExecutorUtil.getAppExecutorService())
+                .thenComposeAsync(vf -> loadProject(sw, vf), EDT)
+                .whenComplete((ignored, t) -> {
+                    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    if (sw.isCancelled()) {
+                        LOG.info("[CMakeMux] Switch to '" + entry.getNickname() + "' superseded by a newer switch.");
+                    } else if (cause != null && !(cause instanceof CancellationException)) {
+                        LOG.warn("[CMakeMux] Switch to '" + entry.getNickname() + "' failed", cause);
+                    }
+                    long marker = sw.getReloadMarker();
+                    if (marker >= 0) {
+                        sw.setConfigureRuns((int) (CMakeMuxWorkspaceWatcher.getInstance(project).getStartedCount() - marker));
+                        LOG.info("[CMakeMux] Switch to '" + entry.getNickname() + "' ran " + sw.getConfigureRuns() + " CMake configure(s).");
+                    }
+                    sw.addPhaseNanos(CMakeMuxSwitch.Phase.TOTAL, System.nanoTime() - sw.getStartedNanos());
+                    // A superseded switch says nothing about how long switching takes
+                    if (!sw.isCancelled()) CMakeMuxSwitchMetrics.getInstance(project).record(sw, cause != null);
+
+                    CMakeMuxSwitch.Stage completed = sw.getCompletedStage();
+                    event.completedStage = completed != null ? completed.name() : null;
+                    event.configureRuns = sw.getConfigureRuns();
+                    event.failed = cause != null && !sw.isCancelled();
+                    event.superseded = sw.isCancelled();
+                    event.failure = cause != null ? String.valueOf(cause) : null;
+                    event.commit();
+                    sw.finish(cause);
+                    if (cause == null && CMakeMuxState.getInstance(project).isWarmBuildDirs()) {
+                        CMakeMuxBuildDirs.getInstance(project).scheduleEviction();
+                    }
+                });
+        return sw;
+    }
+
+    // Stage: resolve the CMakeLists.txt in VFS (background thread)
+    private static VirtualFile resolveFile(CMakeMuxSwitch sw) {
+        String path = sw.getEntry().getPath();
+        String url = VfsUtilCore.pathToUrl(FileUtil.toSystemIndependentName(path));
+        VirtualFile vf = timed(sw, CMakeMuxSwitch.Phase.VFS_LOOKUP,
+                () -> ReadAction.compute(() -> VirtualFileManager.getInstance().findFileByUrl(url)));
         if (vf == null) {
-            Messages.showWarningDialog(project, "Cannot locate file:\n" + entry.getPath(), "Load CMake Project");
-            return;
+            EDT.execute(() -> Messages.showWarningDialog(sw.getProject(), "Cannot locate file:\n" + path, "Load CMake Project"));
+            throw new CancellationException("Cannot locate file: " + path);
+        }
+        sw.setPresetsFingerprint(CMakeMuxProfileSnapshot.computeFingerprint(sw.getEntry()));
+        if (CMakeMuxState.getInstance(sw.getProject()).isWarmBuildDirs()) {
+            CMakeMuxBuildDirs.getInstance(sw.getProject()).ensureNamespace(sw.getEntry());
         }
+        checkActive(sw);
+        sw.completed(CMakeMuxSwitch.Stage.RESOLVE_FILE);
+        return vf;
+    }
+
+    private record ConfigureInputs(VirtualFile file, CMakeMuxPresetHandler.ConfiguredProfiles profiles) {
+    }
+
+    // Part of the fingerprint: settings and build directories of the profiles to configure, from CMakeSettings (EDT)
+    private static ConfigureInputs readProfiles(CMakeMuxSwitch sw, VirtualFile vf) {
+        checkActive(sw);
+        Project project = sw.getProject();
+        CMakeMuxEntry entry = sw.getEntry();
+        File sourceDir = new File(entry.getPath()).getParentFile();
+        CMakeMuxPresetHandler.ConfiguredProfiles profiles = sourceDir == null ? CMakeMuxPresetHandler.ConfiguredProfiles.NONE
+                : timed(sw, CMakeMuxSwitch.Phase.CONFIGURE_FINGERPRINT,
+                        () -> CMakeMuxPresetHandler.configuredProfiles(project, entry.getPresetMatcher(), sourceDir));
+        if (CMakeMuxState.getInstance(project).isWarmBuildDirs()) {
+            // The switch moves them into the entry's namespace
+            CMakeMuxBuildDirs buildDirs = CMakeMuxBuildDirs.getInstance(project);
+            Map<String, File> dirs = new LinkedHashMap<>(profiles.buildDirs());
+            dirs.replaceAll((name, dir) -> {
+                File warm = buildDirs.dirFor(entry, name);
+                return warm != null ? warm : dir;
+            });
+            profiles = new CMakeMuxPresetHandler.ConfiguredProfiles(profiles.settings(), dirs);
+        }
+        return new ConfigureInputs(vf, profiles);
+    }
+
+    // Stage: fingerprint the configure inputs, see CMakeMuxConfigureFingerprint (background thread)
+    private static VirtualFile fingerprint(CMakeMuxSwitch sw, ConfigureInputs inputs) {
+        checkActive(sw);
+        Collection<File> buildDirs = inputs.profiles().buildDirs().values();
+        sw.setConfigureFingerprint(timed(sw, CMakeMuxSwitch.Phase.CONFIGURE_FINGERPRINT, () -> {
+            // So the coming configure reports its inputs for the next switch
+            for (File dir : buildDirs) CMakeMuxFileApi.ensureQuery(dir);
+            return CMakeMuxConfigureFingerprint.compute(sw.getEntry(), buildSettings(sw.getProject()),
+                    inputs.profiles().settings(), buildDirs);
+        }));
+        checkActive(sw);
+        return inputs.file();
+    }
+
+    // Stage: run CLion's LoadCMakeProject on the file, then continue in the configured switch mode (EDT)
+    private static CompletableFuture<Void> loadProject(CMakeMuxSwitch sw, VirtualFile vf) {
+        Project project = sw.getProject();
+        checkActive(sw);
 
         AnAction action = ActionManager.getInstance().getAction("CMake.LoadCMakeProject");
         if (action == null) {
             Messages.showWarningDialog(project, "Cannot find CLion action: CMake.LoadCMakeProject", "Load CMake Project");
-            return;
+            throw new CancellationException("CMake.LoadCMakeProject not found");
         }
 
         DataContext dataContext = SimpleDataContext.builder()
@@ -39,28 +174,209 @@ public final class CMakeMuxLoader {
                 .add(CommonDataKeys.VIRTUAL_FILE_ARRAY, new VirtualFile[]{vf})
                 .build();
 
-        ApplicationManager.getApplication().invokeLater(() -> {
-            AnActionEvent event = AnActionEvent.createEvent(
-                    action,
-                    dataContext,
-                    action.getTemplatePresentation().clone(),
-                    ActionPlaces.PROJECT_VIEW_POPUP,
-                    ActionUiKind.POPUP,
-                    null // no InputEvent
-            );
+        AnActionEvent event = AnActionEvent.createEvent(
+                action,
+                dataContext,
+                action.getTemplatePresentation().clone(),
+                ActionPlaces.PROJECT_VIEW_POPUP,
+                ActionUiKind.POPUP,
+                null // no InputEvent
+        );
+
+        CMakeMuxWorkspaceWatcher watcher = CMakeMuxWorkspaceWatcher.getInstance(project);
+        long marker = watcher.getStartedCount();
+        sw.setReloadMarker(marker);
+
+        // The active path may be restored from the last session; only a reload seen in this one proves CLion's model
+        if (sw.isConfigureUnchanged() && !watcher.isReloading() && watcher.isLastReloadSucceeded() && isActive(sw)) {
+            // Loaded and configured with exactly these inputs; keep CLion's model
+            LOG.info("[CMakeMux] '" + sw.getEntry().getNickname() + "' is loaded and its configure inputs are unchanged, not reloading.");
+            sw.completed(CMakeMuxSwitch.Stage.LOAD_PROJECT);
+            return reloadWithPresets(sw, true);
+        }
+
+        timed(sw, CMakeMuxSwitch.Phase.LOAD_ACTION, () -> {
             ActionUtil.performAction(action, event);
+            return null;
+        });
+
+        CMakeMuxSelectionService.getInstance(project).setActivePath(vf.getPath());
 
-            CMakeMuxSelectionService.getInstance(project).setActivePath(vf.getPath());
+        // Unchanged inputs mean the profile snapshot is current, so it can go into the first configure as well
+        if (CMakeMuxState.getInstance(project).isSingleReloadSwitching() || sw.isConfigureUnchanged()) {
+            return loadWithPresets(sw, marker);
+        }
 
-            // Small delay to allow the action to run before we enable presets.
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                // Do nothing
-            }
+        return timedWait(sw, CMakeMuxSwitch.Phase.LOAD_RELOAD, watcher.awaitReload(marker, RELOAD_START_TIMEOUT_MS))
+                .thenComposeAsync(ok -> {
+                    sw.completed(CMakeMuxSwitch.Stage.LOAD_PROJECT);
+                    return reloadWithPresets(sw, ok);
+                }, EDT);
+    }
 
-            List<String> regexps = entry.getRegexps();
-            CMakeMuxPresetHandler.enableMatchingPresets(project, regexps != null ? regexps : List.of());
+    // Single-reload mode: enable profiles right after the action, in the same EDT event, so the configure
+    // the action queued already sees them and no second reload is needed.
+    private static CompletableFuture<Void> loadWithPresets(CMakeMuxSwitch sw, long marker) {
+        Project project = sw.getProject();
+        CMakeMuxWorkspaceWatcher watcher = CMakeMuxWorkspaceWatcher.getInstance(project);
+        sw.completed(CMakeMuxSwitch.Stage.LOAD_PROJECT);
+
+        long awaitMarker = marker;
+        if (applyPresets(sw) && watcher.getStartedCount() > marker) {
+            // The configure already started with the old profile set; supersede it with one that sees the new set
+            awaitMarker = watcher.getStartedCount();
+            timed(sw, CMakeMuxSwitch.Phase.SCHEDULE_RELOAD, () -> CMakeMuxPresetHandler.scheduleCMakeReload(project));
+        }
+        return timedWait(sw, CMakeMuxSwitch.Phase.RELOAD_WAIT, watcher.awaitReload(awaitMarker, RELOAD_START_TIMEOUT_MS))
+                .thenAccept(ok -> reloadDone(sw, ok));
+    }
+
+    // Classic mode: the project is loaded ('loaded' tells whether that reload succeeded);
+    // enable profiles and reload once more if anything changed (EDT)
+    private static CompletableFuture<Void> reloadWithPresets(CMakeMuxSwitch sw, boolean loaded) {
+        Project project = sw.getProject();
+        checkActive(sw);
+
+        if (!applyPresets(sw)) {
+            // Nothing changed; the reload triggered by loading the project is the final one
+            reloadDone(sw, loaded);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CMakeMuxWorkspaceWatcher watcher = CMakeMuxWorkspaceWatcher.getInstance(project);
+        long marker = watcher.getStartedCount();
+        if (!timed(sw, CMakeMuxSwitch.Phase.SCHEDULE_RELOAD, () -> CMakeMuxPresetHandler.scheduleCMakeReload(project))) {
+            reloadDone(sw, false);
+            return CompletableFuture.completedFuture(null);
+        }
+        return timedWait(sw, CMakeMuxSwitch.Phase.RELOAD_WAIT, watcher.awaitReload(marker, RELOAD_START_TIMEOUT_MS))
+                .thenAccept(ok -> reloadDone(sw, ok));
+    }
+
+    // Final stage; a successful configure is remembered so the next switch with the same inputs can skip a reload
+    private static void reloadDone(CMakeMuxSwitch sw, boolean configured) {
+        sw.completed(CMakeMuxSwitch.Stage.RELOAD_DONE);
+        String fingerprint = sw.getConfigureFingerprint();
+        if (!configured || fingerprint == null || sw.isConfigureUnchanged()) return;
+        CMakeMuxLocalState.getInstance(sw.getProject()).update(sw.getEntry().getPath(), d -> d.configureFingerprint = fingerprint);
+    }
+
+    private static boolean isActive(CMakeMuxSwitch sw) {
+        Project project = sw.getProject();
+        CMakeMuxEntry active = CMakeMuxState.getInstance(project).findByPath(CMakeMuxSelectionService.getInstance(project).getActivePath());
+        return active != null && active.equals(sw.getEntry());
+    }
+
+    // Build directory settings are configure inputs too
+    private static String buildSettings(Project project) {
+        CMakeMuxState state = CMakeMuxState.getInstance(project);
+        return state.isWarmBuildDirs() ? "warm:" + state.getBuildDirRoot() : "shared";
+    }
+
+    // Stages: presets ready, profiles enabled. Returns true when profiles were changed in CMakeSettings.
+    private static boolean applyPresets(CMakeMuxSwitch sw) {
+        boolean changed = enablePresets(sw);
+        // After enabling, so the build directories follow the final profile set
+        return assignBuildDirs(sw) | changed;
+    }
+
+    private static boolean enablePresets(CMakeMuxSwitch sw) {
+        Project project = sw.getProject();
+        CMakeMuxEntry entry = sw.getEntry();
+        CMakeMuxPresetMatcher matcher = entry.getPresetMatcher();
+        if (matcher.isEmpty()) return false;
+
+        // Fast path: same presets files and regexps as last time, so the same profiles
+        String fingerprint = sw.getPresetsFingerprint();
+        CMakeMuxLocalState.EntryData local = CMakeMuxLocalState.getInstance(project).find(entry.getPath());
+        CMakeMuxProfileSnapshot snapshot = local != null ? local.profileSnapshot : null;
+        if (fingerprint != null && snapshot != null && fingerprint.equals(snapshot.getFingerprint())) {
+            Boolean changed = applyKnownProfiles(sw, snapshot.getProfileNames());
+            if (changed != null) return changed;
+            LOG.debug("[CMakeMux] Profile snapshot of '" + entry.getNickname() + "' is not applicable, matching regexps.");
+        }
+
+        timed(sw, CMakeMuxSwitch.Phase.PRESETS_LOAD, () -> CMakeMuxPresetHandler.ensurePresetsLoaded(project));
+        sw.completed(CMakeMuxSwitch.Stage.PRESETS_READY);
+
+        CMakeMuxPresetHandler.EnableResult result = timed(sw, CMakeMuxSwitch.Phase.PROFILES_ENABLE,
+                () -> CMakeMuxPresetHandler.enableMatchingPresets(project, matcher, entry.isExclusive()));
+        sw.completed(CMakeMuxSwitch.Stage.PROFILES_ENABLED);
+        rememberPreviousProfiles(project, result);
+
+        if (fingerprint != null && !result.matched().isEmpty()) {
+            storeSnapshot(project, entry, new CMakeMuxProfileSnapshot(fingerprint, new ArrayList<>(result.matched())));
+        }
+        return result.changed();
+    }
+
+    // Enables exactly the given profiles without loading presets. Returns null when some are not imported profiles.
+    private static @Nullable Boolean applyKnownProfiles(CMakeMuxSwitch sw, List<String> profileNames) {
+        Project project = sw.getProject();
+        CMakeMuxPresetHandler.EnableResult result = timed(sw, CMakeMuxSwitch.Phase.PROFILES_ENABLE,
+                () -> CMakeMuxPresetHandler.applyProfileSnapshot(project, profileNames, sw.getEntry().isExclusive()));
+        if (result == null) return null;
+        sw.completed(CMakeMuxSwitch.Stage.PRESETS_READY);
+        sw.completed(CMakeMuxSwitch.Stage.PROFILES_ENABLED);
+        rememberPreviousProfiles(project, result);
+        return result.changed();
+    }
+
+    // Warm build directories: move every enabled profile into the entry's namespace, including ones
+    // a non-exclusive entry left enabled from an earlier one. Returns true when any moved.
+    private static boolean assignBuildDirs(CMakeMuxSwitch sw) {
+        Project project = sw.getProject();
+        if (!CMakeMuxState.getInstance(project).isWarmBuildDirs()) return false;
+        CMakeMuxBuildDirs buildDirs = CMakeMuxBuildDirs.getInstance(project);
+        CMakeMuxLocalState local = CMakeMuxLocalState.getInstance(project);
+        Map<String, String> originals = new LinkedHashMap<>(local.getOriginalBuildDirs());
+        int moved = timed(sw, CMakeMuxSwitch.Phase.PROFILES_ENABLE, () -> CMakeMuxPresetHandler.assignBuildDirs(project,
+                name -> buildDirs.dirFor(sw.getEntry(), name), originals));
+        local.setOriginalBuildDirs(originals);
+        return moved > 0;
+    }
+
+    // Keep the profile set that was enabled before this switch changed it, so it can be restored
+    private static void rememberPreviousProfiles(Project project, CMakeMuxPresetHandler.EnableResult result) {
+        if (!result.changed()) return;
+        CMakeMuxLocalState.getInstance(project).setPreviousEnabledProfiles(result.previouslyEnabled());
+    }
+
+    private static void storeSnapshot(Project project, CMakeMuxEntry entry, CMakeMuxProfileSnapshot snapshot) {
+        CMakeMuxLocalState.getInstance(project).update(entry.getPath(), d -> d.profileSnapshot = snapshot);
+    }
+
+    private static <T> T timed(CMakeMuxSwitch sw, CMakeMuxSwitch.Phase phase, Supplier<T> work) {
+        CMakeMuxFlightEvents.SwitchPhaseEvent event = phaseEvent(sw, phase);
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            sw.addPhaseNanos(phase, System.nanoTime() - start);
+            event.commit();
+        }
+    }
+
+    private static <T> CompletableFuture<T> timedWait(CMakeMuxSwitch sw, CMakeMuxSwitch.Phase phase, CompletableFuture<T> wait) {
+        CMakeMuxFlightEvents.SwitchPhaseEvent event = phaseEvent(sw, phase);
+        long start = System.nanoTime();
+        sw.setPendingWait(wait);
+        return wait.whenComplete((r, t) -> {
+            sw.addPhaseNanos(phase, System.nanoTime() - start);
+            event.commit();
         });
     }
-}
\ No newline at end of file
+
+    private static CMakeMuxFlightEvents.SwitchPhaseEvent phaseEvent(CMakeMuxSwitch sw, CMakeMuxSwitch.Phase phase) {
+        CMakeMuxFlightEvents.SwitchPhaseEvent event = new CMakeMuxFlightEvents.SwitchPhaseEvent();
+        event.begin();
+        event.entry = sw.getEntry().getNickname();
+        event.phase = phase.name();
+        return event;
+    }
+
+    private static void checkActive(@NotNull CMakeMuxSwitch sw) {
+        if (sw.getProject().isDisposed()) throw new CancellationException("Project disposed");
+        if (sw.isCancelled()) throw new CancellationException("Superseded by a newer switch");
+    }
+}
@@ -0,0 +1,166 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.CollectionFactory;
+import com.intellij.util.xmlb.annotations.Attribute;
+import com.intellij.util.xmlb.annotations.Property;
+import com.intellij.util.xmlb.annotations.Tag;
+import com.intellij.util.xmlb.annotations.XCollection;
+import com.intellij.util.xmlb.annotations.XMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Per-user, per-machine data, kept in the workspace file so it never shows up in VCS: per entry the switch history
+ * behind the frecency ranking, the profile snapshot and the configure fingerprint of the last switch; and what is
+ * needed to undo profile changes (previously enabled profiles, build directories before warm build directories). Keyed by the entry's path; entries that no longer exist
+ * are dropped when the state is saved.
+ */
+@Service(Service.Level.PROJECT)
+@State(name = "CMakeMuxLocalState", storages = @Storage(StoragePathMacros.WORKSPACE_FILE))
+public final class CMakeMuxLocalState implements PersistentStateComponent<CMakeMuxLocalState.State> {
+
+    public static class State {
+        @XCollection(style = XCollection.Style.v2)
+        public List<EntryData> entries = new ArrayList<>();
+        // Profiles that were enabled before the last switch changed them
+        @XCollection(style = XCollection.Style.v2, elementName = "profile")
+        public List<String> previousEnabledProfiles = new ArrayList<>();
+        // Profile name -> its own build directory before warm build directories moved it; empty means CLion's default
+        @XMap(entryTagName = "profile", keyAttributeName = "name", valueAttributeName = "dir")
+        public Map<String, String> originalBuildDirs = new LinkedHashMap<>();
+    }
+
+    /** Local data of one entry. Instances handed out by {@link #find} are copies. */
+    @Tag("entry")
+    public static class EntryData {
+        @Attribute("path")
+        public String path;
+
+        // Switch history for frecency ranking; the score is kept in a time-independent log form, see CMakeMuxFrecency
+        @Attribute("switchCount")
+        public int switchCount;
+
+        // Epoch millis of the last switch to this entry, 0 if never
+        @Attribute("lastSwitched")
+        public long lastSwitched;
+
+        @Attribute("frecency")
+        public double frecency;
+
+        // Profiles resolved on the last switch, reused while presets and regexps are unchanged; not mutated once stored
+        @Property(surroundWithTag = false)
+        public @Nullable CMakeMuxProfileSnapshot profileSnapshot;
+
+        // Configure inputs of the last successful switch, see CMakeMuxConfigureFingerprint
+        @Attribute("configureFingerprint")
+        public @Nullable String configureFingerprint;
+
+        EntryData copy() {
+            EntryData c = new EntryData();
+            c.path = path;
+            c.switchCount = switchCount;
+            c.lastSwitched = lastSwitched;
+            c.frecency = frecency;
+            c.profileSnapshot = profileSnapshot;
+            c.configureFingerprint = configureFingerprint;
+            return c;
+        }
+    }
+
+    private final Project project;
+
+    // Guarded by 'this'; normalized path -> data, following the file system's case sensitivity
+    private final Map<String, EntryData> byPath = CollectionFactory.createFilePathMap();
+    private List<String> previousEnabledProfiles = List.of();
+    private Map<String, String> originalBuildDirs = Map.of();
+
+    public CMakeMuxLocalState(Project project) {
+        this.project = project;
+    }
+
+    public static CMakeMuxLocalState getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxLocalState.class);
+    }
+
+    /** Copy of the entry's local data, or null when there is none. */
+    public synchronized @Nullable EntryData find(@Nullable String path) {
+        if (path == null) return null;
+        EntryData d = byPath.get(key(path));
+        return d != null ? d.copy() : null;
+    }
+
+    /** Changes the entry's local data, creating it when missing. */
+    public synchronized void update(@NotNull String path, @NotNull Consumer<EntryData> change) {
+        EntryData d = byPath.computeIfAbsent(key(path), p -> {
+            EntryData created = new EntryData();
+            created.path = p;
+            return created;
+        });
+        change.accept(d);
+        d.path = path;
+    }
+
+    /** Epoch millis of the last switch to the entry, 0 if never. */
+    public long getLastSwitched(@Nullable String path) {
+        EntryData d = find(path);
+        return d != null ? d.lastSwitched : 0;
+    }
+
+    public synchronized @NotNull List<String> getPreviousEnabledProfiles() {
+        return previousEnabledProfiles;
+    }
+
+    public synchronized void setPreviousEnabledProfiles(@NotNull List<String> profiles) {
+        previousEnabledProfiles = List.copyOf(profiles);
+    }
+
+    public synchronized @NotNull Map<String, String> getOriginalBuildDirs() {
+        return originalBuildDirs;
+    }
+
+    public synchronized void setOriginalBuildDirs(@NotNull Map<String, String> dirs) {
+        originalBuildDirs = Collections.unmodifiableMap(new LinkedHashMap<>(dirs));
+    }
+
+    @Override
+    public synchronized @NotNull State getState() {
+        State state = new State();
+        state.previousEnabledProfiles = new ArrayList<>(previousEnabledProfiles);
+        state.originalBuildDirs = new LinkedHashMap<>(originalBuildDirs);
+        CMakeMuxState entries = CMakeMuxState.getInstance(project);
+        for (EntryData d : byPath.values()) {
+            if (entries.findByPath(d.path) != null) state.entries.add(d.copy());
+        }
+        return state;
+    }
+
+    @Override
+    public synchronized void loadState(@NotNull State state) {
+        previousEnabledProfiles = state.previousEnabledProfiles != null ? List.copyOf(state.previousEnabledProfiles) : List.of();
+        originalBuildDirs = state.originalBuildDirs != null
+                ? Collections.unmodifiableMap(new LinkedHashMap<>(state.originalBuildDirs)) : Map.of();
+        byPath.clear();
+        for (EntryData d : state.entries) {
+            if (d != null && d.path != null) byPath.put(key(d.path), d);
+        }
+    }
+
+    // Same normalization as CMakeMuxState
+    private static String key(String path) {
+        return FileUtil.toCanonicalPath(path);
+    }
+}
@@ -4,9 +4,11 @@ import com.intellij.icons.AllIcons;
 import com.intellij.ide.projectView.ProjectView;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
-import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.io.FileUtil;
@@ -15,25 +17,37 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
+import com.intellij.ui.ColoredListCellRenderer;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.JBSplitter;
+import com.intellij.ui.ScrollPaneFactory;
 import com.intellij.ui.SideBorder;
+import com.intellij.ui.SimpleTextAttributes;
 import com.intellij.ui.ToolbarDecorator;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBList;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.JBUI;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
 /** UI for the tool window: list with rename/delete and open on double-click. */
 public class CMakeMuxPanel extends JPanel implements Disposable {
     private static final Logger LOG = Logger.getInstance(CMakeMuxPanel.class);
+    private static final int MAX_REPLAYED_CHANGES = 200;
 
     private final Project project;
     private final JBList<CMakeMuxEntry> list;
@@ -43,6 +57,15 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
     private JBLabel detailsTitleLabel;
     private JBList<String> regexpList;
     private DefaultListModel<String> regexpModel;
+    private JBCheckBox exclusiveCheckBox;
+    private JBLabel timingsTitleLabel;
+    private DefaultTableModel timingsModel;
+    private JBLabel previewTitleLabel;
+    private DefaultListModel<PresetPreview> previewModel;
+
+    /** A configure preset of the selected entry and whether its current regexps match it. */
+    record PresetPreview(@NotNull String name, @Nullable String displayName, boolean matched) {
+    }
 
     private List<String> snapshotRegexModel() {
         List<String> regs = new ArrayList<>();
@@ -50,20 +73,28 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         return regs;
     }
 
+    // The row is replaced when the update event arrives; the details already show the edit and are kept
     private void persistRegexpModelToState(CMakeMuxEntry selectedEntry) {
         if (selectedEntry == null) return;
         List<String> regs = snapshotRegexModel();
-        ApplicationManager.getApplication().runWriteAction(() -> {
-            List<CMakeMuxEntry> stateList = CMakeMuxState.getInstance(project).getEntries();
-            for (CMakeMuxEntry e : stateList) {
-                if (com.intellij.openapi.util.io.FileUtil.pathsEqual(e.getPath(), selectedEntry.getPath())) {
-                    e.setRegexps(regs);
-                    break;
-                }
-            }
-            // Keep the in-memory selected entry in sync
-            selectedEntry.setRegexps(regs);
-        });
+        CMakeMuxService.getInstance(project).batch(editor -> editor.update(selectedEntry.getPath(), e -> e.setRegexps(regs)));
+    }
+
+    private void persistExclusiveToState(CMakeMuxEntry selectedEntry) {
+        if (selectedEntry == null) return;
+        boolean exclusive = exclusiveCheckBox.isSelected();
+        CMakeMuxService.getInstance(project).batch(editor -> editor.update(selectedEntry.getPath(), e -> e.setExclusive(exclusive)));
+    }
+
+    private void restorePreviousPresets() {
+        List<String> previous = new ArrayList<>(CMakeMuxLocalState.getInstance(project).getPreviousEnabledProfiles());
+        if (previous.isEmpty()) {
+            Messages.showInfoMessage(project, "No previously enabled presets recorded.", "Restore Previous Presets");
+            return;
+        }
+        if (CMakeMuxPresetHandler.restoreEnabledProfiles(project, previous).changed()) {
+            CMakeMuxPresetHandler.scheduleCMakeReload(project);
+        }
     }
 
     public CMakeMuxPanel(@NotNull Project project) {
@@ -71,7 +102,10 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         this.project = project;
         this.model = new DefaultListModel<>();
         this.list = new JBList<>(model);
-        this.list.setCellRenderer(new EntryRenderer(() -> CMakeMuxSelectionService.getInstance(project).getActivePath()));
+        this.list.setCellRenderer(new EntryRenderer(
+                () -> CMakeMuxState.getInstance(project).findByPath(CMakeMuxSelectionService.getInstance(project).getActivePath()),
+                () -> CMakeMuxSelectionService.getInstance(project).getCurrentSwitch(),
+                CMakeMuxHealthTracker.getInstance(project)::getHealth));
         setBorder(JBUI.Borders.empty());
         list.setBorder(JBUI.Borders.empty());
 
@@ -86,8 +120,85 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
                     public void actionPerformed(@NotNull AnActionEvent e) {
                         locateSelectedInProjectView();
                     }
+                })
+                .addExtraAction(new ToggleAction("Single Reload Switching", "Enable matching presets before the first CMake configure instead of reloading twice", AllIcons.Actions.Refresh) {
+                    @Override
+                    public @NotNull ActionUpdateThread getActionUpdateThread() {
+                        return ActionUpdateThread.BGT;
+                    }
+
+                    @Override
+                    public boolean isSelected(@NotNull AnActionEvent e) {
+                        return CMakeMuxState.getInstance(project).isSingleReloadSwitching();
+                    }
+
+                    @Override
+                    public void setSelected(@NotNull AnActionEvent e, boolean state) {
+                        CMakeMuxState.getInstance(project).setSingleReloadSwitching(state);
+                    }
+                })
+                .addExtraAction(new ToggleAction("Rank Popup by Frecency", "List the most frequently and recently loaded projects first in the load popup", AllIcons.Actions.Checked) {
+                    @Override
+                    public @NotNull ActionUpdateThread getActionUpdateThread() {
+                        return ActionUpdateThread.BGT;
+                    }
+
+                    @Override
+                    public boolean isSelected(@NotNull AnActionEvent e) {
+                        return CMakeMuxState.getInstance(project).isFrecencyRanking();
+                    }
+
+                    @Override
+                    public void setSelected(@NotNull AnActionEvent e, boolean state) {
+                        CMakeMuxState.getInstance(project).setFrecencyRanking(state);
+                    }
+                })
+                .addExtraAction(new ToggleAction("Warm Build Directories", "Give every project its own build directories, within a disk budget", AllIcons.Nodes.Folder) {
+                    @Override
+                    public @NotNull ActionUpdateThread getActionUpdateThread() {
+                        return ActionUpdateThread.BGT;
+                    }
+
+                    @Override
+                    public boolean isSelected(@NotNull AnActionEvent e) {
+                        return CMakeMuxState.getInstance(project).isWarmBuildDirs();
+                    }
+
+                    @Override
+                    public void setSelected(@NotNull AnActionEvent e, boolean state) {
+                        if (state && !askBuildDirBudget()) return;
+                        CMakeMuxState.getInstance(project).setWarmBuildDirs(state);
+                        if (!state) CMakeMuxBuildDirs.getInstance(project).restoreProfileDirs();
+                    }
+                })
+                .addExtraAction(new ToggleAction("Background Configure", "Keep the most recently used projects configured in their warm build directories", AllIcons.Actions.Execute) {
+                    @Override
+                    public @NotNull ActionUpdateThread getActionUpdateThread() {
+                        return ActionUpdateThread.BGT;
+                    }
+
+                    @Override
+                    public void update(@NotNull AnActionEvent e) {
+                        super.update(e);
+                        // Configuring into the shared build directories would clobber the active project's tree
+                        e.getPresentation().setEnabled(CMakeMuxState.getInstance(project).isWarmBuildDirs());
+                    }
+
+                    @Override
+                    public boolean isSelected(@NotNull AnActionEvent e) {
+                        return CMakeMuxState.getInstance(project).isBackgroundConfigure();
+                    }
+
+                    @Override
+                    public void setSelected(@NotNull AnActionEvent e, boolean state) {
+                        CMakeMuxState.getInstance(project).setBackgroundConfigure(state);
+                        if (state) CMakeMuxPreconfigure.getInstance(project).schedule();
+                    }
                 });
 
+        AnAction discover = ActionManager.getInstance().getAction(CMakeMuxDiscoverAction.ID);
+        if (discover != null) decorator.addExtraAction(discover);
+
         JComponent toolbarPanel = decorator.createPanel();
         toolbarPanel.setBorder(JBUI.Borders.empty());
 
@@ -106,6 +217,20 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
                 .connect(this)
                 .subscribe(CMakeMuxSelectionEvents.TOPIC, (CMakeMuxSelectionEvents) this::onActiveSelectionChanged);
 
+        project.getMessageBus()
+                .connect(this)
+                .subscribe(CMakeMuxHealthEvents.TOPIC, (CMakeMuxHealthEvents) paths -> {
+                    list.repaint();
+                    // Presets files may have changed
+                    CMakeMuxEntry sel = list.getSelectedValue();
+                    if (sel != null && paths.contains(sel.getPath())) schedulePreview();
+                });
+
+        // Repaint while a switch progresses so the entry shows its running stage
+        project.getMessageBus()
+                .connect(this)
+                .subscribe(CMakeMuxSwitchEvents.TOPIC, (CMakeMuxSwitchEvents) this::onSwitchProgressed);
+
         list.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
                 updateDetailsForSelection();
@@ -125,9 +250,6 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         // Populate model and initialize view
         refreshFromState();
 
-        // Best-effort: detect current active CMakeLists on panel load and set it
-        initializeActiveSelectionIfMissing();
-
         // Reflect current stored active path even if no event was received yet
         onActiveSelectionChanged();
 
@@ -157,12 +279,70 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
     }
 
 
-    private void onEntriesChanged() {
+    private void onEntriesChanged(CMakeMuxEntriesDelta delta) {
         if (SwingUtilities.isEventDispatchThread()) {
-            refreshFromState();
+            applyDelta(delta);
         } else {
-            SwingUtilities.invokeLater(this::refreshFromState);
+            SwingUtilities.invokeLater(() -> applyDelta(delta));
+        }
+    }
+
+    // Replays the delta on the list model so only the touched rows are updated
+    private void applyDelta(CMakeMuxEntriesDelta delta) {
+        // Large batches are cheaper to rebuild in one go than to replay row by row
+        if (delta.isFull() || delta.getChanges().size() > MAX_REPLAYED_CHANGES) {
+            refreshFromState();
+            return;
+        }
+        CMakeMuxEntry selectedBefore = list.getSelectedValue();
+        for (CMakeMuxEntriesDelta.Change c : delta.getChanges()) {
+            if (!applyChange(c)) {
+                LOG.debug("[CMakeMux] Entry list out of sync at " + c + ", rebuilding.");
+                refreshFromState();
+                return;
+            }
+        }
+        if (list.getSelectedIndex() == -1 && !model.isEmpty()) {
+            list.setSelectedIndex(0); // enables Edit/Delete right away
+        }
+        // Selection listeners do not fire when the selected row is replaced in place
+        if (list.getSelectedValue() != selectedBefore) {
+            updateDetailsForSelection();
+        }
+    }
+
+    private boolean applyChange(CMakeMuxEntriesDelta.Change c) {
+        int index = c.index();
+        switch (c.kind()) {
+            case ADDED -> {
+                if (index < 0 || index > model.size()) return false;
+                model.add(index, c.entry());
+            }
+            case REMOVED -> {
+                if (!isModelEntryAt(index, c.entry())) return false;
+                model.remove(index);
+            }
+            case UPDATED -> {
+                if (!isModelEntryAt(index, c.entry())) return false;
+                model.set(index, c.entry());
+            }
+            case MOVED -> {
+                int to = c.toIndex();
+                if (!isModelEntryAt(index, c.entry()) || to < 0 || to >= model.size()) return false;
+                boolean selected = list.getSelectedIndex() == index;
+                model.remove(index);
+                model.add(to, c.entry());
+                if (selected) {
+                    list.setSelectedIndex(to);
+                    list.ensureIndexIsVisible(to);
+                }
+            }
         }
+        return true;
+    }
+
+    private boolean isModelEntryAt(int index, CMakeMuxEntry entry) {
+        return index >= 0 && index < model.size() && model.get(index).equals(entry);
     }
 
     private void onActiveSelectionChanged() {
@@ -173,6 +353,13 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         }
     }
 
+    private void onSwitchProgressed(CMakeMuxSwitch sw) {
+        onActiveSelectionChanged();
+        if (sw.isDone()) {
+            SwingUtilities.invokeLater(this::updateTimings);
+        }
+    }
+
     private JComponent buildDetailsPanel() {
         JPanel p = new JPanel(new BorderLayout());
         // Left-side separator line between the main list and regex panel + minimal inner padding
@@ -198,28 +385,194 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
                 .setEditAction(e -> editRegexp())
                 .setRemoveAction(e -> removeRegex())
                 .setMoveUpAction(e -> moveRegexp(-1))
-                .setMoveDownAction(e -> moveRegexp(1));
+                .setMoveDownAction(e -> moveRegexp(1))
+                .addExtraAction(new AnAction("Restore Previous Presets", "Re-enable the CMake presets that were enabled before the last switch", AllIcons.Actions.Rollback) {
+                    @Override
+                    public void actionPerformed(@NotNull AnActionEvent e) {
+                        restorePreviousPresets();
+                    }
+                });
 
         JComponent decoratorPanel = decorator.createPanel();
         decoratorPanel.setBorder(JBUI.Borders.empty());
 
-        p.add(decoratorPanel, BorderLayout.CENTER);
+        JPanel center = new JPanel(new BorderLayout());
+        center.add(decoratorPanel, BorderLayout.CENTER);
+        center.add(buildPreviewPanel(), BorderLayout.SOUTH);
+        p.add(center, BorderLayout.CENTER);
+
+        exclusiveCheckBox = new JBCheckBox("Disable all other presets");
+        exclusiveCheckBox.setToolTipText("Enable exactly the matching presets and disable the rest when loading this project");
+        exclusiveCheckBox.addActionListener(e -> persistExclusiveToState(list.getSelectedValue()));
+
+        JPanel south = new JPanel(new BorderLayout());
+        south.add(exclusiveCheckBox, BorderLayout.NORTH);
+        south.add(buildTimingsPanel(), BorderLayout.CENTER);
+        p.add(south, BorderLayout.SOUTH);
+        return p;
+    }
+
+    // Presets of the selected entry split into matched and unmatched, following the regexp list as it is edited
+    private JComponent buildPreviewPanel() {
+        JPanel p = new JPanel(new BorderLayout());
+        p.setBorder(JBUI.Borders.emptyTop(6));
+
+        previewTitleLabel = new JBLabel("Preset Preview");
+        previewTitleLabel.setFont(detailsTitleLabel.getFont());
+        p.add(previewTitleLabel, BorderLayout.NORTH);
+
+        previewModel = new DefaultListModel<>();
+        JBList<PresetPreview> previewList = new JBList<>(previewModel);
+        previewList.setVisibleRowCount(8);
+        previewList.setFocusable(false);
+        previewList.getEmptyText().setText("No configure presets found");
+        previewList.setCellRenderer(new PreviewRenderer());
+        p.add(ScrollPaneFactory.createScrollPane(previewList), BorderLayout.CENTER);
+
+        regexpModel.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                schedulePreview();
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                schedulePreview();
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                schedulePreview();
+            }
+        });
         return p;
     }
 
+    // Recomputes the preview in the background; a newer request cancels the one still running
+    private void schedulePreview() {
+        if (previewModel == null) return; // UI not ready
+        CMakeMuxEntry sel = list.getSelectedValue();
+        // Also submitted without a selection, so it supersedes a computation still running for the old one
+        String path = sel != null ? sel.getPath() : null;
+        List<String> regexps = snapshotRegexModel();
+        ReadAction.nonBlocking(() -> path != null ? computePreview(path, regexps) : null)
+                .coalesceBy(this, previewModel)
+                .expireWith(this)
+                .finishOnUiThread(ModalityState.any(), this::showPreview)
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    // Matched presets first, each group in file order
+    private static List<PresetPreview> computePreview(String cmakeListsPath, List<String> regexps) {
+        File dir = new File(cmakeListsPath).getParentFile();
+        if (dir == null) return List.of();
+        List<CMakeMuxPresetsParser.Preset> presets = CMakeMuxPresetsParser.configurePresets(dir);
+        ProgressManager.checkCanceled();
+        CMakeMuxPresetMatcher matcher = CMakeMuxPresetMatcher.compile(regexps);
+        List<PresetPreview> matched = new ArrayList<>();
+        List<PresetPreview> unmatched = new ArrayList<>();
+        for (CMakeMuxPresetsParser.Preset preset : presets) {
+            ProgressManager.checkCanceled();
+            boolean m = !matcher.isEmpty() && matcher.matches(preset.name());
+            (m ? matched : unmatched).add(new PresetPreview(preset.name(), preset.displayName(), m));
+        }
+        matched.addAll(unmatched);
+        return matched;
+    }
+
+    private void showPreview(@Nullable List<PresetPreview> previews) {
+        previewModel.clear();
+        if (previews == null) {
+            previewTitleLabel.setText("Preset Preview");
+            return;
+        }
+        int matched = 0;
+        for (PresetPreview p : previews) {
+            if (p.matched()) matched++;
+            previewModel.addElement(p);
+        }
+        previewTitleLabel.setText("Preset Preview (" + matched + " of " + previews.size() + " match)");
+    }
+
+    private static final class PreviewRenderer extends ColoredListCellRenderer<PresetPreview> {
+        @Override
+        protected void customizeCellRenderer(@NotNull JList<? extends PresetPreview> list, PresetPreview preview,
+                                             int index, boolean selected, boolean hasFocus) {
+            setIcon(preview.matched() ? AllIcons.Actions.Checked : null);
+            append(preview.name(), preview.matched() ? SimpleTextAttributes.REGULAR_ATTRIBUTES : SimpleTextAttributes.GRAYED_ATTRIBUTES);
+            if (preview.displayName() != null && !preview.displayName().equals(preview.name())) {
+                append("  " + preview.displayName(), SimpleTextAttributes.GRAYED_ITALIC_ATTRIBUTES);
+            }
+        }
+    }
+
+    // Per-phase durations of the selected entry's recent switches
+    private JComponent buildTimingsPanel() {
+        JPanel p = new JPanel(new BorderLayout());
+        p.setBorder(JBUI.Borders.emptyTop(6));
+
+        timingsTitleLabel = new JBLabel("Switch Timings");
+        timingsTitleLabel.setFont(detailsTitleLabel.getFont());
+        p.add(timingsTitleLabel, BorderLayout.NORTH);
+
+        timingsModel = new DefaultTableModel(new Object[]{"Phase", "Last", "p50", "p95"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JBTable table = new JBTable(timingsModel);
+        table.getEmptyText().setText("No switches recorded");
+        table.setFocusable(false);
+        table.setRowSelectionAllowed(false);
+        table.setPreferredScrollableViewportSize(
+                new Dimension(table.getPreferredScrollableViewportSize().width, table.getRowHeight() * CMakeMuxSwitch.Phase.values().length));
+        p.add(ScrollPaneFactory.createScrollPane(table), BorderLayout.CENTER);
+        return p;
+    }
+
+    private void updateTimings() {
+        if (timingsModel == null) return; // UI not ready
+        CMakeMuxEntry sel = list.getSelectedValue();
+        List<CMakeMuxSwitchMetrics.Sample> samples =
+                CMakeMuxSwitchMetrics.getInstance(project).getSamples(sel != null ? sel.getPath() : null);
+
+        timingsModel.setRowCount(0);
+        if (samples.isEmpty()) {
+            timingsTitleLabel.setText("Switch Timings");
+            return;
+        }
+        int configureRuns = samples.get(samples.size() - 1).configureRuns();
+        timingsTitleLabel.setText("Switch Timings (last " + samples.size() + ", "
+                + (configureRuns >= 0 ? configureRuns + " configure run(s)" : "configure runs unknown") + ")");
+        for (CMakeMuxSwitch.Phase phase : CMakeMuxSwitch.Phase.values()) {
+            CMakeMuxSwitchMetrics.PhaseStats stats = CMakeMuxSwitchMetrics.stats(samples, phase);
+            if (stats.count() == 0) continue;
+            timingsModel.addRow(new Object[]{phase.getLabel(), formatNanos(stats.last()), formatNanos(stats.p50()), formatNanos(stats.p95())});
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        long ms = nanos / 1_000_000;
+        return ms >= 10_000 ? String.format("%.1f s", ms / 1000.0) : ms + " ms";
+    }
+
     private void updateDetailsForSelection() {
         if (detailsTitleLabel == null || regexpModel == null) return; // UI not ready
         CMakeMuxEntry sel = list.getSelectedValue();
         String targetLabel = sel != null ? sel.getNickname() : "(none)";
         detailsTitleLabel.setText("Enable CMake Presets for " + targetLabel);
 
+        updateTimings();
+
+        exclusiveCheckBox.setEnabled(sel != null);
+        exclusiveCheckBox.setSelected(sel != null && sel.isExclusive());
+
+        // Unchanged after an edit made here; rebuilding would lose the regexp selection
+        List<String> regs = sel != null && sel.getRegexps() != null ? sel.getRegexps() : List.of();
+        if (snapshotRegexModel().equals(regs)) return;
         regexpModel.clear();
-        if (sel != null) {
-            List<String> regs = sel.getRegexps();
-            if (regs != null) {
-                for (String r : regs) regexpModel.addElement(r);
-            }
-        }
+        for (String r : regs) regexpModel.addElement(r);
     }
 
     private void addRegex() {
@@ -235,7 +588,7 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         regexpList.setSelectedIndex(regexpModel.getSize() - 1);
         regexpList.ensureIndexIsVisible(regexpModel.getSize() - 1);
 
-        // Persist without broadcasting entriesChanged
+        // Persist; the entriesChanged event only replaces the row
         persistRegexpModelToState(sel);
     }
 
@@ -255,7 +608,7 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         regexpList.setSelectedIndex(idx);
         regexpList.ensureIndexIsVisible(idx);
 
-        // Persist without broadcasting entriesChanged
+        // Persist; the entriesChanged event only replaces the row
         persistRegexpModelToState(sel);
     }
 
@@ -272,7 +625,7 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
             regexpList.ensureIndexIsVisible(next);
         }
 
-        // Persist without broadcasting entriesChanged
+        // Persist; the entriesChanged event only replaces the row
         persistRegexpModelToState(sel);
     }
 
@@ -285,19 +638,13 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
             selectedPath = current.getPath();
         }
 
+        // One snapshot for both rows and index, so they cannot disagree
+        CMakeMuxState.Snapshot snapshot = CMakeMuxState.getInstance(project).getSnapshot();
         model.clear();
-        List<CMakeMuxEntry> entries = new ArrayList<>(CMakeMuxService.getInstance(project).getEntries());
-        for (CMakeMuxEntry e : entries) model.addElement(e);
-
-        int toSelect = -1;
-        if (selectedPath != null) {
-            for (int i = 0; i < model.size(); i++) {
-                if (FileUtil.pathsEqual(model.get(i).getPath(), selectedPath)) {
-                    toSelect = i;
-                    break;
-                }
-            }
-        }
+        model.addAll(snapshot.getEntries());
+
+        // The model mirrors the snapshot order, so its index gives the row
+        int toSelect = snapshot.indexOf(selectedPath);
         if (toSelect >= 0) {
             list.setSelectedIndex(toSelect);
             list.ensureIndexIsVisible(toSelect);
@@ -329,17 +676,12 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         jList.repaint();
     }
 
-    // Wrapper for moving entries in the main list and persisting to state
+    // The row moves when the MOVED change arrives; the editor moves from the current order, so quick repeats add up
     private void moveEntries(int delta) {
-        moveSelected(list, model, delta, () -> {
-            List<CMakeMuxEntry> newOrder = new ArrayList<>();
-            for (int i = 0; i < model.size(); i++) newOrder.add(model.get(i));
-            ApplicationManager.getApplication().runWriteAction(() -> {
-                List<CMakeMuxEntry> stateList = CMakeMuxState.getInstance(project).getEntries();
-                stateList.clear();
-                stateList.addAll(newOrder);
-            });
-        });
+        CMakeMuxEntry sel = list.getSelectedValue();
+        if (sel == null) return;
+        CMakeMuxService.getInstance(project).batch(editor -> editor.move(sel.getPath(), delta));
+        list.requestFocusInWindow();
     }
 
     // Wrapper for moving regexpes and persisting on the selected entry
@@ -357,21 +699,44 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
         String newNick = Messages.showInputDialog(project,
                 "New name:", "Rename Entry", Messages.getQuestionIcon(), sel.getNickname(), null);
         if (newNick == null || newNick.trim().isEmpty()) return;
-        sel.setNickname(newNick.trim());
-        CMakeMuxService.getInstance(project).addOrReplace(sel);
-        list.repaint();
-        updateDetailsForSelection();
+        String nickname = newNick.trim();
+        // Change the latest stored version; the row and the details are refreshed when the update event arrives
+        CMakeMuxService.getInstance(project).batch(editor -> editor.update(sel.getPath(), e -> e.setNickname(nickname)));
+    }
+
+    // Returns false when the user cancelled or entered something that is not a positive number
+    private boolean askBuildDirBudget() {
+        CMakeMuxState state = CMakeMuxState.getInstance(project);
+        String input = Messages.showInputDialog(project,
+                "Disk budget for all warm build directories (GB):", "Warm Build Directories", Messages.getQuestionIcon(),
+                String.valueOf(Math.max(1, state.getBuildDirBudgetMb() / 1024)), null);
+        if (input == null) return false;
+        int gb;
+        try {
+            gb = Integer.parseInt(input.trim());
+        } catch (NumberFormatException ex) {
+            gb = 0;
+        }
+        if (gb <= 0 || gb > Integer.MAX_VALUE / 1024) {
+            Messages.showWarningDialog(project, "Please enter a positive number of gigabytes.", "Warm Build Directories");
+            return false;
+        }
+        state.setBuildDirBudgetMb(gb * 1024);
+        return true;
     }
 
     private void doDelete() {
-        CMakeMuxEntry sel = list.getSelectedValue();
-        if (sel == null) return;
-        int res = Messages.showYesNoDialog(project,
-                "Remove '" + sel.getNickname() + "'?", "Delete Entry", Messages.getQuestionIcon());
+        List<CMakeMuxEntry> selected = list.getSelectedValuesList();
+        if (selected.isEmpty()) return;
+        String question = selected.size() == 1
+                ? "Remove '" + selected.get(0).getNickname() + "'?"
+                : "Remove " + selected.size() + " entries?";
+        int res = Messages.showYesNoDialog(project, question, "Delete Entry", Messages.getQuestionIcon());
         if (res == Messages.YES) {
-            CMakeMuxService.getInstance(project).removeByPath(sel.getPath());
-            model.removeElement(sel);
-            updateDetailsForSelection();
+            // One write action and one change event; rows are removed when it arrives
+            List<String> paths = new ArrayList<>(selected.size());
+            for (CMakeMuxEntry e : selected) paths.add(e.getPath());
+            CMakeMuxService.getInstance(project).removeAllByPath(paths);
         }
     }
 
@@ -390,10 +755,16 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
     public void dispose() { /* disposed with content */ }
 
     private static class EntryRenderer extends DefaultListCellRenderer {
-        private final java.util.function.Supplier<String> activePathSupplier;
-
-        EntryRenderer(java.util.function.Supplier<String> activePathSupplier) {
-            this.activePathSupplier = activePathSupplier;
+        private final java.util.function.Supplier<CMakeMuxEntry> activeEntrySupplier;
+        private final java.util.function.Supplier<CMakeMuxSwitch> switchSupplier;
+        private final java.util.function.Function<CMakeMuxEntry, CMakeMuxHealthTracker.Health> healthFunction;
+
+        EntryRenderer(java.util.function.Supplier<CMakeMuxEntry> activeEntrySupplier,
+                      java.util.function.Supplier<CMakeMuxSwitch> switchSupplier,
+                      java.util.function.Function<CMakeMuxEntry, CMakeMuxHealthTracker.Health> healthFunction) {
+            this.activeEntrySupplier = activeEntrySupplier;
+            this.switchSupplier = switchSupplier;
+            this.healthFunction = healthFunction;
         }
 
         @Override
@@ -402,13 +773,30 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
             if (value instanceof CMakeMuxEntry e) {
                 setText(e.toString());
                 setToolTipText(e.getPath());
+
+                CMakeMuxSwitch sw = switchSupplier.get();
+                CMakeMuxSwitch.Stage running = sw != null && e.equals(sw.getEntry()) ? sw.getRunningStage() : null;
+                if (running != null) {
+                    setText(e + " (" + running.getActivity() + "…)");
+                }
                 setBorder(JBUI.Borders.empty(2, 6));
 
-                String activePath = activePathSupplier.get();
-                boolean isActive = activePath != null
-                        && FileUtil.pathsEqual(activePath, e.getPath());
+                // Resolved through the state's path index; entries compare by normalized path
+                boolean isActive = e.equals(activeEntrySupplier.get());
 
                 Icon icon = isActive ? AllIcons.Debugger.NextStatement : AllIcons.Actions.ProjectDirectory;
+
+                // Tracked from VFS events; no file system access while painting
+                CMakeMuxHealthTracker.Health health = healthFunction.apply(e);
+                if (health == CMakeMuxHealthTracker.Health.MISSING) {
+                    icon = AllIcons.General.Error;
+                    if (!isSelected) setForeground(JBColor.GRAY);
+                } else if (health == CMakeMuxHealthTracker.Health.MODIFIED && running == null) {
+                    setText(e + " *");
+                }
+                if (health.getDescription() != null) {
+                    setToolTipText(e.getPath() + " (" + health.getDescription() + ")");
+                }
                 setIcon(icon);
                 setFont(getFont().deriveFont(Font.PLAIN));
             }
@@ -417,14 +805,6 @@ public class CMakeMuxPanel extends JPanel implements Disposable {
     }
 
     private void loadCMakeProject(@NotNull CMakeMuxEntry entry) {
-        CMakeMuxLoader.loadEntry(project, entry);
-    }
-
-    // Best-effort detection of current CMakeLists when the panel loads
-    private void initializeActiveSelectionIfMissing() {
-        if (CMakeMuxSelectionService.getInstance(project).getActivePath() != null) return;
-
-        // Perform a few delayed attempts since CMake workspace might initialize a bit later.
-        CMakeMuxActiveDetector.detectAndSetActiveBestEffort(project, 3, 200);
+        CMakeMuxSwitchScheduler.getInstance(project).request(entry);
     }
 }
\ No newline at end of file
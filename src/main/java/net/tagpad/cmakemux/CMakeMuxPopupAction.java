@@ -5,24 +5,41 @@ import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.ui.popup.JBPopup;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
-import com.intellij.openapi.ui.popup.ListPopup;
 import com.intellij.openapi.ui.popup.JBPopupListener;
 import com.intellij.openapi.ui.popup.LightweightWindowEvent;
-import com.intellij.ui.popup.list.ListPopupImpl;
+import com.intellij.ui.ColoredListCellRenderer;
+import com.intellij.ui.DocumentAdapter;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.SimpleTextAttributes;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBTextField;
 import org.jetbrains.annotations.NotNull;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.project.DumbAwareAction;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
 import java.awt.*;
-import java.util.ArrayList;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
 
+/**
+ * Popup to load a CMake Mux entry: type to filter (backed by the state's search index),
+ * digits 1-9 load one of the top results (Alt+digit while a filter is typed), Enter loads the selection.
+ */
 public class CMakeMuxPopupAction extends AnAction implements DumbAware {
+    private static final String TITLE = "CMake Mux - Load Project";
+    private static final int SHORTCUT_COUNT = 9;
+    // Enough to scroll through; narrowing the filter is faster than scrolling further
+    private static final int MAX_RESULTS = 500;
 
     // Keep a strong reference while popup is shown; clear on close
-    private static ListPopup lastPopup = null;
+    private static JBPopup lastPopup = null;
+    private static JList<CMakeMuxEntry> lastList = null;
 
     @Override
     public void actionPerformed(AnActionEvent e) {
@@ -30,74 +47,146 @@ public class CMakeMuxPopupAction extends AnAction implements DumbAware {
         if (project == null) return;
 
         // If a popup is already visible, advance selection and return
-        if (lastPopup != null && lastPopup.isVisible()) {
-            advanceSelection(lastPopup);
+        if (lastPopup != null && lastPopup.isVisible() && lastList != null) {
+            moveListSelectionDown(lastList);
             return;
         }
 
-        List<CMakeMuxEntry> entries = new ArrayList<>(CMakeMuxService.getInstance(project).getEntries());
-        if (entries.isEmpty()) {
-            Messages.showInfoMessage(project, "No entries in CMake Mux.", "CMake Mux - Load Project");
+        CMakeMuxState.Snapshot snapshot = CMakeMuxState.getInstance(project).getSnapshot();
+        if (snapshot.size() == 0) {
+            Messages.showInfoMessage(project, "No entries in CMake Mux.", TITLE);
             return;
         }
+        CMakeMuxSearchIndex index = snapshot.getSearchIndex();
+        CMakeMuxEntry active = snapshot.findByPath(CMakeMuxSelectionService.getInstance(project).getActivePath());
+
+        DefaultListModel<CMakeMuxEntry> model = new DefaultListModel<>();
+        JBList<CMakeMuxEntry> list = new JBList<>(model);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new EntryRenderer(active));
+        list.getEmptyText().setText("No matching entries");
+
+        JBTextField searchField = new JBTextField();
+        searchField.getEmptyText().setText("Type to filter by name or path");
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(searchField, BorderLayout.NORTH);
+        list.setVisibleRowCount(Math.min(snapshot.size(), 12));
+        panel.add(ScrollPaneFactory.createScrollPane(list, true), BorderLayout.CENTER);
+
+        JBPopup popup = JBPopupFactory.getInstance()
+                .createComponentPopupBuilder(panel, searchField)
+                .setTitle(TITLE)
+                .setRequestFocus(true)
+                .setFocusable(true)
+                .setResizable(true)
+                .setMovable(true)
+                .setCancelOnClickOutside(true)
+                .setDimensionServiceKey(project, "CMakeMux.LoadProjectPopup", true)
+                .createPopup();
+
+        // Most frecent entries first while nothing is typed, if enabled; kept ranked by CMakeMuxFrecency
+        List<CMakeMuxEntry> frecent = CMakeMuxState.getInstance(project).isFrecencyRanking()
+                ? CMakeMuxFrecency.getInstance(project).top(SHORTCUT_COUNT)
+                : List.of();
+
+        Runnable filter = () -> {
+            String query = searchField.getText();
+            model.clear();
+            if (query.isBlank() && !frecent.isEmpty()) {
+                model.addAll(frecent);
+                for (CMakeMuxEntry entry : index.search("", MAX_RESULTS)) {
+                    if (!frecent.contains(entry)) model.addElement(entry);
+                }
+            } else {
+                model.addAll(index.search(query, MAX_RESULTS));
+            }
+            // Preselect the active entry while nothing is typed
+            int selected = query.isBlank() && active != null ? model.indexOf(active) : -1;
+            if (selected < 0 && !model.isEmpty()) selected = 0;
+            if (selected >= 0) {
+                list.setSelectedIndex(selected);
+                list.ensureIndexIsVisible(selected);
+            }
+        };
+        filter.run();
 
-        int max = Math.min(9, entries.size());
-        DefaultActionGroup group = new DefaultActionGroup();
-
-        String activePath = CMakeMuxSelectionService.getInstance(project).getActivePath();
-
-        // Track the action that corresponds to the active entry to preselect it in the popup
-        final AnAction[] activeActionRef = new AnAction[1];
-
-        for (int i = 0; i < max; i++) {
-            final int index = i;
-            CMakeMuxEntry entry = entries.get(i);
-            String title = entry.getNickname() != null && !entry.getNickname().isEmpty()
-                    ? entry.getNickname()
-                    : entry.getPath();
-
-            boolean isActive = activePath != null && FileUtil.pathsEqual(activePath, entry.getPath());
-            Icon icon = isActive ? AllIcons.Debugger.NextStatement : AllIcons.Actions.ProjectDirectory;
+        searchField.getDocument().addDocumentListener(new DocumentAdapter() {
+            @Override
+            protected void textChanged(@NotNull DocumentEvent event) {
+                filter.run();
+            }
+        });
+        searchField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyTyped(KeyEvent event) {
+                // Digits pick a top result while nothing is typed; otherwise they are part of the filter
+                char c = event.getKeyChar();
+                if (c < '1' || c > '0' + SHORTCUT_COUNT) return;
+                if (!searchField.getText().isEmpty() || event.isAltDown()) return;
+                event.consume();
+                int i = c - '1';
+                if (i < model.size()) load(popup, project, model.get(i));
+            }
 
-            AnAction action = new AnAction(title, entry.getPath(), icon) {
-                @Override
-                public void actionPerformed(@NotNull AnActionEvent ignored) {
-                    CMakeMuxLoader.loadEntry(project, entries.get(index));
+            @Override
+            public void keyPressed(KeyEvent event) {
+                // Alt+digit works while filtering; handled by key code since Alt chords type other characters (macOS)
+                // or no character at all
+                int code = event.getKeyCode();
+                if (event.isAltDown() && code >= KeyEvent.VK_1 && code < KeyEvent.VK_1 + SHORTCUT_COUNT) {
+                    event.consume();
+                    int i = code - KeyEvent.VK_1;
+                    if (i < model.size()) load(popup, project, model.get(i));
+                    return;
                 }
-            };
-            group.add(action);
-            if (isActive) activeActionRef[0] = action;
-        }
-
-        ListPopup popup = JBPopupFactory.getInstance()
-                .createActionGroupPopup(
-                        "CMake Mux - Load Project",
-                        group,
-                        e.getDataContext(),
-                        true,   // showNumbers
-                        true,   // showDisabledActions
-                        true,   // autoDispose
-                        null,
-                        max,    // maxRowCount
-                        action -> action == activeActionRef[0] // preselect active
-                );
+                switch (code) {
+                    case KeyEvent.VK_DOWN -> moveSelection(list, 1);
+                    case KeyEvent.VK_UP -> moveSelection(list, -1);
+                    case KeyEvent.VK_ENTER -> {
+                        CMakeMuxEntry selected = list.getSelectedValue();
+                        if (selected != null) load(popup, project, selected);
+                    }
+                    default -> {
+                        return;
+                    }
+                }
+                event.consume();
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent event) {
+                CMakeMuxEntry selected = list.getSelectedValue();
+                if (selected != null) load(popup, project, selected);
+            }
+        });
 
         // Install the same shortcut inside the popup to cycle selection on repeated presses
         installCyclingShortcut(popup);
 
         // Remember popup while shown; clear when closed
         lastPopup = popup;
+        lastList = list;
         popup.addListener(new JBPopupListener() {
             @Override public void onClosed(@NotNull LightweightWindowEvent event) {
-                if (lastPopup == popup) lastPopup = null;
+                if (lastPopup == popup) {
+                    lastPopup = null;
+                    lastList = null;
+                }
             }
         });
 
         popup.showInBestPositionFor(e.getDataContext());
     }
 
+    private static void load(JBPopup popup, Project project, CMakeMuxEntry entry) {
+        popup.cancel();
+        CMakeMuxSwitchScheduler.getInstance(project).request(entry);
+    }
+
     // Bind this action's shortcut to the popup so repeated presses advance selection
-    private void installCyclingShortcut(@NotNull ListPopup popup) {
+    private void installCyclingShortcut(@NotNull JBPopup popup) {
         AnAction original = ActionManager.getInstance().getAction("net.tagpad.cmakemux.CMakeMuxPopupAction");
         if (original == null) return;
         ShortcutSet shortcutSet = original.getShortcutSet();
@@ -105,8 +194,8 @@ public class CMakeMuxPopupAction extends AnAction implements DumbAware {
         AnAction cycleAction = new DumbAwareAction() {
             @Override
             public void actionPerformed(@NotNull AnActionEvent e) {
-                if (lastPopup != null && lastPopup.isVisible()) {
-                    advanceSelection(lastPopup);
+                if (lastPopup != null && lastPopup.isVisible() && lastList != null) {
+                    moveListSelectionDown(lastList);
                 }
             }
         };
@@ -114,41 +203,35 @@ public class CMakeMuxPopupAction extends AnAction implements DumbAware {
         cycleAction.registerCustomShortcutSet(shortcutSet, content);
     }
 
-    // Emulate pressing Arrow Down on the active popup list (with wrap-around)
-    private void advanceSelection(@NotNull ListPopup popup) {
-        // Prefer direct access via the implementation class
-        if (popup instanceof ListPopupImpl impl) {
-            JList<?> list = impl.getList();
-            if (list != null) {
-                moveListSelectionDown(list);
-                return;
-            }
-        }
-        // Fallback: search for the list in the popup content
-        JComponent content = popup.getContent();
-        JList<?> list = findFirstJList(content);
-        if (list != null) {
-            moveListSelectionDown(list);
-        }
+    // Arrow Down with wrap-around
+    private static void moveListSelectionDown(@NotNull JList<?> list) {
+        moveSelection(list, 1);
     }
 
-    private void moveListSelectionDown(@NotNull JList<?> list) {
+    private static void moveSelection(@NotNull JList<?> list, int delta) {
         int size = list.getModel().getSize();
         if (size <= 0) return;
         int current = Math.max(0, list.getSelectedIndex());
-        int next = (current + 1) % size;
+        int next = Math.floorMod(current + delta, size);
         list.setSelectedIndex(next);
         list.ensureIndexIsVisible(next);
     }
 
-    private JList<?> findFirstJList(Component root) {
-        if (root instanceof JList<?> jList) return jList;
-        if (root instanceof Container container) {
-            for (Component child : container.getComponents()) {
-                JList<?> found = findFirstJList(child);
-                if (found != null) return found;
-            }
+    private static final class EntryRenderer extends ColoredListCellRenderer<CMakeMuxEntry> {
+        private final CMakeMuxEntry active;
+
+        EntryRenderer(CMakeMuxEntry active) {
+            this.active = active;
+        }
+
+        @Override
+        protected void customizeCellRenderer(@NotNull JList<? extends CMakeMuxEntry> list, CMakeMuxEntry entry,
+                                             int index, boolean selected, boolean hasFocus) {
+            setIcon(entry.equals(active) ? AllIcons.Debugger.NextStatement : AllIcons.Actions.ProjectDirectory);
+            append(index < SHORTCUT_COUNT ? (index + 1) + "  " : "   ", SimpleTextAttributes.GRAYED_ATTRIBUTES);
+            String nickname = entry.getNickname();
+            append(nickname != null && !nickname.isEmpty() ? nickname : entry.getPath());
+            append("  " + entry.getPath(), SimpleTextAttributes.GRAYED_ATTRIBUTES);
         }
-        return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,272 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.ExecutionManager;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.task.ProjectTaskContext;
+import com.intellij.task.ProjectTaskListener;
+import com.intellij.task.ProjectTaskManager;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in background configure of the most recently used entries that are not active, into their warm build directories,
+ * so the next switch to one of them finds an up-to-date CMakeCache.
+ * Runs one {@code cmake --preset} at a time at low priority and backs off while indexing, building,
+ * switching or reloading. Only presets that name their generator are configured, and a build directory counts as
+ * configured only after a run into it exited successfully with the current inputs.
+ */
+@Service(Service.Level.PROJECT)
+public final class CMakeMuxPreconfigure implements Disposable {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxPreconfigure.class);
+
+    private static final int DEBOUNCE_MS = 2_000;
+    private static final int BUSY_RETRY_MS = 30_000;
+    private static final int CONFIGURE_TIMEOUT_MS = 10 * 60 * 1000;
+    // Written into a build directory only after a configure into it exited with 0; holds the inputs' fingerprint
+    private static final String STAMP_FILE = ".cmake-mux-configured";
+
+    private final Project project;
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    private final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("CMakeMux Preconfigure", 1);
+    private volatile @Nullable ProcessHandler running;
+    // CMakeLists.txt path of the entry being configured, so eviction leaves its namespace alone
+    private volatile @Nullable String runningPath;
+    // CLion builds in progress; they may be building in the same trees and compete for the CPU
+    private final AtomicInteger builds = new AtomicInteger();
+    private volatile boolean disposed;
+
+    public CMakeMuxPreconfigure(Project project) {
+        this.project = project;
+        var connection = project.getMessageBus().connect(this);
+        connection.subscribe(CMakeMuxSwitchEvents.TOPIC, (CMakeMuxSwitchEvents) sw -> {
+            if (sw.isDone()) schedule(DEBOUNCE_MS);
+        });
+        connection.subscribe(CMakeMuxHealthEvents.TOPIC, (CMakeMuxHealthEvents) paths -> schedule(DEBOUNCE_MS));
+        connection.subscribe(ProjectTaskListener.TOPIC, new ProjectTaskListener() {
+            @Override
+            public void started(@NotNull ProjectTaskContext context) {
+                builds.incrementAndGet();
+                stopRunning();
+            }
+
+            @Override
+            public void finished(@NotNull ProjectTaskManager.Result result) {
+                if (builds.decrementAndGet() <= 0) {
+                    builds.set(0);
+                    schedule(DEBOUNCE_MS);
+                }
+            }
+        });
+        schedule(DEBOUNCE_MS);
+    }
+
+    public static CMakeMuxPreconfigure getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxPreconfigure.class);
+    }
+
+    /** CMakeLists.txt path of the entry being configured right now, or null. */
+    public @Nullable String getRunningPath() {
+        return runningPath;
+    }
+
+    /** Re-evaluates the candidates after a quiet period; cheap when the feature is off. */
+    public void schedule() {
+        schedule(DEBOUNCE_MS);
+    }
+
+    private void schedule(int delayMs) {
+        if (disposed) return;
+        alarm.cancelAllRequests();
+        alarm.addRequest(() -> executor.execute(this::run), delayMs);
+    }
+
+    private boolean isEnabled() {
+        CMakeMuxState state = CMakeMuxState.getInstance(project);
+        // Without warm build directories the configure would clobber the active entry's build tree
+        return state.isBackgroundConfigure() && state.isWarmBuildDirs();
+    }
+
+    // Why to back off right now, or null when configuring is fine
+    private @Nullable String busyReason() {
+        if (DumbService.isDumb(project)) return "indexing";
+        if (builds.get() > 0) return "building";
+        CMakeMuxSwitch current = CMakeMuxSelectionService.getInstance(project).getCurrentSwitch();
+        if (current != null && !current.isDone()) return "switching";
+        if (CMakeMuxWorkspaceWatcher.getInstance(project).isReloading()) return "CMake reloading";
+        for (ProcessHandler handler : ExecutionManager.getInstance(project).getRunningProcesses()) {
+            if (!handler.isProcessTerminated()) return "process running";
+        }
+        return null;
+    }
+
+    private void run() {
+        if (disposed || project.isDisposed() || !isEnabled()) return;
+        for (CMakeMuxEntry entry : candidates()) {
+            String busy = busyReason();
+            if (busy != null) {
+                LOG.debug("[CMakeMux] Background configure paused (" + busy + ").");
+                schedule(BUSY_RETRY_MS);
+                return;
+            }
+            if (disposed || !isEnabled()) return;
+            configure(entry);
+        }
+    }
+
+    // Most recently switched entries first, except the active one
+    private List<CMakeMuxEntry> candidates() {
+        CMakeMuxState state = CMakeMuxState.getInstance(project);
+        CMakeMuxState.Snapshot snapshot = state.getSnapshot();
+        CMakeMuxEntry active = snapshot.findByPath(CMakeMuxSelectionService.getInstance(project).getActivePath());
+        List<CMakeMuxEntry> result = new ArrayList<>();
+        CMakeMuxLocalState local = CMakeMuxLocalState.getInstance(project);
+        for (CMakeMuxEntry e : snapshot.getEntries()) {
+            if (local.getLastSwitched(e.getPath()) <= 0 || e == active) continue;
+            result.add(e);
+        }
+        result.sort(Comparator.comparingLong((CMakeMuxEntry e) -> local.getLastSwitched(e.getPath())).reversed());
+        return result.subList(0, Math.min(Math.max(0, state.getBackgroundConfigureCount()), result.size()));
+    }
+
+    private void configure(CMakeMuxEntry entry) {
+        // The same presets a switch would enable
+        List<CMakeMuxPresetsParser.Preset> presets = CMakeMuxPresetsParser.matchedPresets(entry);
+        if (presets.isEmpty()) return;
+        File sourceDir = new File(entry.getPath()).getParentFile();
+        if (sourceDir == null || !sourceDir.isDirectory()) return;
+
+        String cmake = CMakeMuxState.getInstance(project).getCMakeExecutable().trim();
+        if (cmake.isEmpty()) cmake = "cmake";
+
+        CMakeMuxBuildDirs buildDirs = CMakeMuxBuildDirs.getInstance(project);
+        runningPath = entry.getPath();
+        try {
+            buildDirs.ensureNamespace(entry);
+            for (CMakeMuxPresetsParser.Preset preset : presets) {
+                if (disposed) return;
+                // CLion configures with its toolchain's generator; a cache made with another one would be rejected
+                if (preset.generator() == null) {
+                    LOG.debug("[CMakeMux] Not configuring preset '" + preset.name() + "' in the background: it does not set a generator.");
+                    continue;
+                }
+                if (busyReason() != null) {
+                    schedule(BUSY_RETRY_MS);
+                    return;
+                }
+                File buildDir = buildDirs.dirFor(entry, preset.name());
+                if (buildDir == null) return;
+                String settings = "preconfigure:" + cmake + ':' + preset.name() + ':' + preset.generator();
+                if (isUpToDate(buildDir, fingerprint(entry, settings, buildDir))) continue;
+                runCMake(entry, sourceDir, cmake, preset, buildDir, settings);
+            }
+        } finally {
+            runningPath = null;
+        }
+    }
+
+    // Inputs as CMake listed them for the last configure of the directory; null before the first one
+    private static @Nullable String fingerprint(CMakeMuxEntry entry, String settings, File buildDir) {
+        return CMakeMuxConfigureFingerprint.compute(entry, settings, "", List.of(buildDir));
+    }
+
+    // Only a configure that succeeded with exactly these inputs counts; failed or stopped ones are retried
+    private static boolean isUpToDate(File buildDir, @Nullable String fingerprint) {
+        if (fingerprint == null) return false;
+        try {
+            return fingerprint.equals(Files.readString(new File(buildDir, STAMP_FILE).toPath()).trim());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void runCMake(CMakeMuxEntry entry, File sourceDir, String cmake, CMakeMuxPresetsParser.Preset preset,
+                          File buildDir, String settings) {
+        Path stamp = new File(buildDir, STAMP_FILE).toPath();
+        try {
+            Files.deleteIfExists(stamp);
+        } catch (IOException e) {
+            LOG.warn("[CMakeMux] Cannot delete " + stamp + ": " + e.getMessage());
+            return;
+        }
+        CMakeMuxFileApi.ensureQuery(buildDir);
+
+        List<String> command = new ArrayList<>();
+        if (SystemInfo.isUnix) {
+            command.add("nice");
+            command.add("-n");
+            command.add("10");
+        }
+        command.add(cmake);
+        command.add("-S");
+        command.add(sourceDir.getPath());
+        command.add("-B");
+        command.add(buildDir.getPath());
+        command.add("--preset");
+        command.add(preset.name());
+        command.add("-G");
+        command.add(preset.generator());
+        GeneralCommandLine cmd = new GeneralCommandLine(command)
+                .withWorkDirectory(sourceDir.getPath())
+                .withParentEnvironmentType(GeneralCommandLine.ParentEnvironmentType.CONSOLE);
+
+        String what = "'" + entry.getNickname() + "' (" + preset.name() + ")";
+        long start = System.nanoTime();
+        try {
+            CapturingProcessHandler handler = new CapturingProcessHandler(cmd);
+            running = handler;
+            ProcessOutput output = handler.runProcess(CONFIGURE_TIMEOUT_MS);
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            if (output.isTimeout() || output.isCancelled()) {
+                LOG.info("[CMakeMux] Background configure of " + what + " stopped after " + ms + " ms.");
+            } else if (output.getExitCode() != 0) {
+                LOG.info("[CMakeMux] Background configure of " + what + " failed with exit code "
+                        + output.getExitCode() + ": " + output.getStderr());
+            } else {
+                // The inputs CMake just reported
+                String fingerprint = fingerprint(entry, settings, buildDir);
+                if (fingerprint != null) Files.writeString(stamp, fingerprint + '\n');
+                LOG.info("[CMakeMux] Background configure of " + what + " took " + ms + " ms.");
+            }
+        } catch (ExecutionException e) {
+            LOG.warn("[CMakeMux] Cannot run " + cmd.getCommandLineString() + ": " + e.getMessage());
+        } catch (IOException e) {
+            LOG.warn("[CMakeMux] Cannot write " + stamp + ": " + e.getMessage());
+        } finally {
+            running = null;
+        }
+    }
+
+    /** Stops the configure in progress, if any; called when a switch starts, since CLion may configure into the same tree. */
+    void stopRunning() {
+        ProcessHandler handler = running;
+        if (handler != null) handler.destroyProcess();
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        stopRunning();
+    }
+}
@@ -1,16 +1,23 @@
 package net.tagpad.cmakemux;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 
 /**
  * Internal-API based helper to enable all imported CMake profiles
@@ -19,217 +26,294 @@ import java.util.stream.Collectors;
  * read-only CMake profiles that correspond to those presets.
  * This code is intentionally reflective and defensive to survive across CLion changes,
  * but it is still fragile by nature. These APIs are however present since long time and probably
- * will not change very often.
+ * will not change very often. All lookups go through {@link CMakeMuxClionBridge}, which links them once.
  */
 public final class CMakeMuxPresetHandler {
     private static final Logger LOG = Logger.getInstance(CMakeMuxPresetHandler.class);
 
-    public static void enableMatchingPresets(@NotNull Project project, @NotNull List<String> regexes) {
-        if (regexes.isEmpty()) return;
+    /**
+     * Outcome of enabling profiles: how many were enabled/disabled, which profile names matched
+     * and which profiles were enabled before the change.
+     */
+    record EnableResult(int enabled, int disabled, @NotNull Set<String> matched, @NotNull List<String> previouslyEnabled) {
+        static final EnableResult NONE = new EnableResult(0, 0, Set.of(), List.of());
 
-        List<Pattern> patterns = regexes.stream()
-                .map(p -> Pattern.compile(p, Pattern.CASE_INSENSITIVE))
-                .collect(Collectors.toList());
+        boolean changed() {
+            return enabled > 0 || disabled > 0;
+        }
+    }
 
-        ApplicationManager.getApplication().invokeLater(() -> {
-            try {
-                // Ensure presets are parsed/imported into profiles first
-                ensurePresetsLoaded(project);
+    /**
+     * Enables all imported profiles matched by the entry's compiled regexps and stores them in CMakeSettings.
+     * In exclusive mode all other profiles are disabled in the same {@code setProfiles} call.
+     * Does not reload CMake; see {@link #scheduleCMakeReload(Project)}.
+     */
+    static @NotNull EnableResult enableMatchingPresets(@NotNull Project project,
+                                                       @NotNull CMakeMuxPresetMatcher matcher,
+                                                       boolean exclusive) {
+        if (matcher.isEmpty()) return EnableResult.NONE;
 
-                int enabledCount = enableMatchingImportedProfiles(project, patterns);
-                scheduleCMakeReload(project);
-                LOG.info("[CMakeMux] Enabled " + enabledCount + " CMake profiles (from presets) by regex.");
-            } catch (Throwable t) {
-                LOG.warn("[CMakeMux] Failed to enable presets via internal API", t);
-            }
-        });
+        EnableResult result = updateProfiles(project, matcher::matchAll, exclusive);
+        LOG.info("[CMakeMux] Enabled " + result.enabled() + ", disabled " + result.disabled() + " CMake profiles (from presets) by regex.");
+        return result;
     }
 
-    // Ensure CMakePresetLoader has loaded and imported presets into profiles
-    private static void ensurePresetsLoaded(Project project) {
-        try {
-            Class<?> loaderCls = Class.forName("com.jetbrains.cidr.cpp.cmake.presets.CMakePresetLoader");
-            Method getService = project.getClass().getMethod("getService", Class.class);
-            Object loader = getService.invoke(project, loaderCls);
-            if (loader == null) {
-                LOG.warn("[CMakeMux] CMakePresetLoader service is null, bail out.");
-                return;
-            }
-            // Use load(boolean) to avoid redundant reloads; bail if not available
-            Method loadMethod = findMethod(loaderCls, "load", boolean.class);
-            if (loadMethod == null) {
-                LOG.warn("[CMakeMux] CMakePresetLoader.load(boolean) not found, bail out.");
-                return;
-            }
-            loadMethod.invoke(loader, false);
-        } catch (Throwable t) {
-            // Non-fatal; proceed with best-effort
-            LOG.debug("[CMakeMux] ensurePresetsLoaded failed (continuing): " + t.getMessage(), t);
+    /**
+     * Enables exactly the named profiles without loading presets or evaluating regexps.
+     * Returns null when any of the names is not an imported profile (yet), so the caller can fall back.
+     */
+    static @Nullable EnableResult applyProfileSnapshot(@NotNull Project project,
+                                                       @NotNull List<String> profileNames,
+                                                       boolean exclusive) {
+        if (profileNames.isEmpty()) return EnableResult.NONE;
+        Set<String> wanted = new HashSet<>(profileNames);
+        boolean[] complete = {false};
+        EnableResult result = updateProfiles(project, names -> {
+            Set<String> present = selectPresent(names, wanted);
+            // Do not touch anything unless every snapshot profile is there
+            complete[0] = present.size() == wanted.size();
+            return complete[0] ? present : Set.of();
+        }, exclusive);
+        if (!complete[0]) return null;
+        LOG.info("[CMakeMux] Enabled " + result.enabled() + ", disabled " + result.disabled() + " CMake profiles from snapshot.");
+        return result;
+    }
+
+    /** Enables exactly the named profiles and disables all others, e.g. to restore a previous set. */
+    static @NotNull EnableResult restoreEnabledProfiles(@NotNull Project project, @NotNull List<String> profileNames) {
+        if (profileNames.isEmpty()) return EnableResult.NONE;
+        Set<String> wanted = new HashSet<>(profileNames);
+        // Restore whatever still exists
+        EnableResult result = updateProfiles(project, names -> selectPresent(names, wanted), true);
+        LOG.info("[CMakeMux] Restored " + result.matched().size() + " previously enabled CMake profiles.");
+        return result;
+    }
+
+    private static Set<String> selectPresent(List<String> names, Set<String> wanted) {
+        Set<String> present = new LinkedHashSet<>();
+        for (String n : names) {
+            if (wanted.contains(n)) present.add(n);
         }
+        return present;
     }
 
-    @SuppressWarnings("unchecked")
-    private static int enableMatchingImportedProfiles(Project project, List<Pattern> patterns) throws Exception {
-        // Resolve CLion’s CMake settings
-        Class<?> settingsClass;
-        try {
-            settingsClass = Class.forName("com.jetbrains.cidr.cpp.cmake.CMakeSettings");
-        } catch (ClassNotFoundException e) {
-            LOG.warn("[CMakeMux] CMakeSettings class not found, bail out.");
-            return 0;
+    /** Ensure CMakePresetLoader has loaded and imported presets into profiles. Returns false when it could not run. */
+    static boolean ensurePresetsLoaded(@NotNull Project project) {
+        CMakeMuxClionBridge bridge = CMakeMuxClionBridge.getInstance();
+        Object loader = bridge.getPresetLoader(project);
+        if (loader == null) {
+            LOG.warn("[CMakeMux] CMakePresetLoader service is null, bail out.");
+            return false;
         }
+        // Use load(boolean) to avoid redundant reloads; non-fatal, proceed with best-effort
+        CMakeMuxFlightEvents.PresetLoadEvent event = new CMakeMuxFlightEvents.PresetLoadEvent();
+        event.begin();
+        boolean loaded = bridge.loadPresets(loader, false);
+        event.succeeded = loaded;
+        event.commit();
+        return loaded;
+    }
 
-        Method getInstance = findMethod(settingsClass, "getInstance", Project.class);
-        if (getInstance == null) {
-            LOG.warn("[CMakeMux] CMakeSettings.getInstance(Project) not found, bail out.");
-            return 0;
+    private static EnableResult updateProfiles(Project project,
+                                               Function<List<String>, Set<String>> selector,
+                                               boolean exclusive) {
+        CMakeMuxFlightEvents.ProfilesUpdateEvent event = new CMakeMuxFlightEvents.ProfilesUpdateEvent();
+        event.begin();
+        event.exclusive = exclusive;
+        try {
+            EnableResult result = updateProfiles(project, selector, exclusive, event);
+            event.matchedCount = result.matched().size();
+            event.enabledCount = result.enabled();
+            event.disabledCount = result.disabled();
+            return result;
+        } finally {
+            event.commit();
         }
-        Object settings = getInstance.invoke(null, project);
+    }
+
+    private static EnableResult updateProfiles(Project project,
+                                               Function<List<String>, Set<String>> selector,
+                                               boolean exclusive,
+                                               CMakeMuxFlightEvents.ProfilesUpdateEvent event) {
+        CMakeMuxClionBridge bridge = CMakeMuxClionBridge.getInstance();
+
+        // Resolve CLion’s CMake settings
+        Object settings = bridge.getSettings(project);
         if (settings == null) {
             LOG.warn("[CMakeMux] CMakeSettings instance is null, bail out.");
-            return 0;
+            event.failure = "CMakeSettings unavailable";
+            return EnableResult.NONE;
         }
 
-        Method getProfiles = findMethod(settingsClass, "getProfiles");
-        if (getProfiles == null) {
-            LOG.warn("[CMakeMux] CMakeSettings.getProfiles() not found, bail out.");
-            return 0;
-        }
-        Object res = getProfiles.invoke(settings);
-        if (!(res instanceof List)) {
+        List<Object> profiles = bridge.getProfiles(settings);
+        if (profiles == null) {
             LOG.warn("[CMakeMux] CMakeSettings.getProfiles() returned non-list or null, bail out.");
-            return 0;
+            event.failure = "Profiles unavailable";
+            return EnableResult.NONE;
         }
-        List<Object> profiles = (List<Object>) res;
+        event.profileCount = profiles.size();
 
-        int enabled = 0;
+        // Names first, so the whole list is matched in one pass (and memoized by the matcher)
+        List<String> names = new ArrayList<>(profiles.size());
+        List<String> previouslyEnabled = new ArrayList<>();
         for (Object profile : profiles) {
             if (profile == null) {
                 LOG.warn("[CMakeMux] Encountered null profile, bail out.");
-                return enabled;
+                event.failure = "Null profile";
+                return EnableResult.NONE;
             }
+            String name = bridge.getProfileName(profile);
+            names.add(name != null ? name : "");
+            if (name != null && Boolean.TRUE.equals(bridge.isProfileEnabled(profile))) previouslyEnabled.add(name);
+        }
+        Set<String> matched = selector.apply(names);
+        // Never disable everything: CLion needs at least one enabled profile
+        if (matched.isEmpty()) return EnableResult.NONE;
 
-            // Keep dual getter for name/displayName
-            String name = firstNonNull(
-                    invokeStringGetter(profile, "getName"),
-                    invokeStringGetter(profile, "getDisplayName")
-            );
-            if (name == null || name.isEmpty()) continue;
+        int enabled = 0;
+        int disabled = 0;
+        // Profile -> its 'enabled' value before this pass, for the rollback; null when it could not be read
+        Map<Object, Boolean> prior = new IdentityHashMap<>();
+        for (int i = 0; i < profiles.size(); i++) {
+            String name = names.get(i);
+            if (name.isEmpty()) continue;
 
-            if (!matchesAny(patterns, name)) continue;
+            boolean wanted = matched.contains(name);
+            if (!wanted && !exclusive) continue;
 
-            Boolean current = invokeBooleanGetter(profile, "getEnabled");
-            if (Boolean.TRUE.equals(current)) continue;
+            Object profile = profiles.get(i);
+            Boolean before = bridge.isProfileEnabled(profile);
+            if (Boolean.TRUE.equals(before) == wanted) continue;
 
-            Field enabledField = findBooleanField(profile.getClass(), "enabled");
-            if (enabledField == null) {
+            // Recorded before the write, which may fail after partly applying
+            prior.put(profile, before);
+            if (!bridge.setProfileEnabled(profile, wanted)) {
                 LOG.warn("[CMakeMux] 'enabled' field not found on profile, bail out.");
-                return enabled;
+                event.failure = "Profile 'enabled' field unavailable";
+                // Put back exactly what each touched profile had and commit nothing
+                prior.forEach((p, value) -> {
+                    if (value != null) bridge.setProfileEnabled(p, value);
+                    else LOG.warn("[CMakeMux] Cannot restore 'enabled' of profile " + bridge.getProfileName(p) + ": its value was unreadable.");
+                });
+                return EnableResult.NONE;
             }
-            enabledField.setAccessible(true);
-            enabledField.set(profile, true);
-            enabled++;
+            if (wanted) enabled++;
+            else disabled++;
         }
 
-        Method setProfiles = findMethod(settingsClass, "setProfiles", List.class);
-        if (setProfiles == null) {
-            LOG.warn("[CMakeMux] CMakeSettings.setProfiles(List) not found, bail out.");
-            return enabled;
-        }
-        setProfiles.invoke(settings, profiles);
-        return enabled;
+        if (enabled > 0 || disabled > 0) bridge.setProfiles(settings, profiles);
+        return new EnableResult(enabled, disabled, matched, previouslyEnabled);
     }
 
-    private static void scheduleCMakeReload(Project project) {
-        try {
-            Class<?> wsClass = Class.forName("com.jetbrains.cidr.cpp.cmake.workspace.CMakeWorkspace");
-            Method getInstance = findMethod(wsClass, "getInstance", Project.class);
-            if (getInstance == null) {
-                LOG.warn("[CMakeMux] CMakeWorkspace.getInstance(Project) not found, bail out.");
-                return;
-            }
-            Object ws = getInstance.invoke(null, project);
-            if (ws == null) {
-                LOG.warn("[CMakeMux] CMakeWorkspace instance is null, bail out.");
-                return;
-            }
-            Method scheduleReload = findMethod(wsClass, "scheduleReload");
-            if (scheduleReload == null) {
-                LOG.warn("[CMakeMux] CMakeWorkspace.scheduleReload() not found, bail out.");
-                return;
+    /**
+     * Points every enabled profile at its directory from {@code dirFor} and stores them in CMakeSettings.
+     * The first time a profile is moved, its own directory goes into {@code originals} ("" for CLion's default).
+     * Returns the number of profiles changed. Does not reload CMake.
+     */
+    static int assignBuildDirs(@NotNull Project project, @NotNull Function<String, File> dirFor,
+                               @NotNull Map<String, String> originals) {
+        CMakeMuxClionBridge bridge = CMakeMuxClionBridge.getInstance();
+        Object settings = bridge.getSettings(project);
+        if (settings == null) return 0;
+        List<Object> profiles = bridge.getProfiles(settings);
+        if (profiles == null) return 0;
+
+        int changed = 0;
+        for (Object profile : profiles) {
+            if (profile == null || !Boolean.TRUE.equals(bridge.isProfileEnabled(profile))) continue;
+            String name = bridge.getProfileName(profile);
+            File dir = name != null ? dirFor.apply(name) : null;
+            File current = bridge.getProfileGenerationDir(profile);
+            if (dir == null || dir.equals(current)) continue;
+            if (!bridge.setProfileGenerationDir(profile, dir)) {
+                LOG.warn("[CMakeMux] 'generationDir' field not found on profile, bail out.");
+                break;
             }
-            scheduleReload.invoke(ws);
-        } catch (Throwable t) {
-            LOG.debug("[CMakeMux] scheduleCMakeReload failed (continuing): " + t.getMessage(), t);
+            originals.putIfAbsent(name, current != null ? current.getPath() : "");
+            changed++;
         }
+        if (changed > 0) bridge.setProfiles(settings, profiles);
+        LOG.info("[CMakeMux] Pointed " + changed + " CMake profiles at warm build directories.");
+        return changed;
     }
 
-    // Utility helpers
-
-    private static boolean matchesAny(List<Pattern> patterns, String name) {
-        for (Pattern p : patterns) {
-            if (p.matcher(name).find()) return true;
-        }
-        return false;
-    }
+    /**
+     * Points the profiles in {@code originals} that still use a directory below {@code root} back at their own directories.
+     * Returns the number of profiles changed. Does not reload CMake.
+     */
+    static int restoreBuildDirs(@NotNull Project project, @NotNull Map<String, String> originals, @Nullable Path root) {
+        if (originals.isEmpty()) return 0;
+        CMakeMuxClionBridge bridge = CMakeMuxClionBridge.getInstance();
+        Object settings = bridge.getSettings(project);
+        if (settings == null) return 0;
+        List<Object> profiles = bridge.getProfiles(settings);
+        if (profiles == null) return 0;
 
-    private static Method findMethod(Class<?> cls, String name, Class<?>... paramTypes) {
-        try {
-            return cls.getMethod(name, paramTypes);
-        } catch (NoSuchMethodException e1) {
-            try {
-                Method m = cls.getDeclaredMethod(name, paramTypes);
-                m.setAccessible(true);
-                return m;
-            } catch (NoSuchMethodException e2) {
-                for (Method m : cls.getDeclaredMethods()) {
-                    if (m.getName().equals(name) && (paramTypes.length == 0 || Arrays.equals(m.getParameterTypes(), paramTypes))) {
-                        m.setAccessible(true);
-                        return m;
-                    }
-                }
-                return null;
+        int changed = 0;
+        for (Object profile : profiles) {
+            if (profile == null) continue;
+            String name = bridge.getProfileName(profile);
+            String original = name != null ? originals.get(name) : null;
+            if (original == null) continue;
+            // Directories the user picked since then stay as they are
+            File current = bridge.getProfileGenerationDir(profile);
+            if (current == null || (root != null && !current.toPath().startsWith(root))) continue;
+            if (!bridge.setProfileGenerationDir(profile, original.isEmpty() ? null : new File(original))) {
+                LOG.warn("[CMakeMux] 'generationDir' field not found on profile, bail out.");
+                break;
             }
+            changed++;
         }
+        if (changed > 0) bridge.setProfiles(settings, profiles);
+        LOG.info("[CMakeMux] Restored the build directories of " + changed + " CMake profiles.");
+        return changed;
     }
 
-    private static Field findBooleanField(Class<?> cls, String name) {
-        try {
-            Field f = cls.getDeclaredField(name);
-            f.setAccessible(true);
-            Class<?> t = f.getType();
-            if (t == boolean.class || t == Boolean.class) return f;
-            return null;
-        } catch (NoSuchFieldException e) {
-            return null;
-        }
+    /** Settings of the profiles a switch configures, sorted by name, and their build directories by profile name. */
+    record ConfiguredProfiles(@NotNull String settings, @NotNull Map<String, File> buildDirs) {
+        static final ConfiguredProfiles NONE = new ConfiguredProfiles("", Map.of());
     }
 
-    private static String invokeStringGetter(Object obj, String getter) {
-        Method m = findMethod(obj.getClass(), getter);
-        if (m == null) return null;
-        try {
-            Object v = m.invoke(obj);
-            return v != null ? v.toString() : null;
-        } catch (Exception e) {
-            return null;
-        }
-    }
+    /**
+     * The profiles a switch to an entry with this matcher configures (the currently enabled ones when it matches
+     * nothing). Relative build directories are resolved against {@code sourceDir}. NONE when CMakeSettings is not available.
+     */
+    static @NotNull ConfiguredProfiles configuredProfiles(@NotNull Project project, @NotNull CMakeMuxPresetMatcher matcher,
+                                                          @NotNull File sourceDir) {
+        CMakeMuxClionBridge bridge = CMakeMuxClionBridge.getInstance();
+        Object settings = bridge.getSettings(project);
+        if (settings == null) return ConfiguredProfiles.NONE;
+        List<Object> profiles = bridge.getProfiles(settings);
+        if (profiles == null) return ConfiguredProfiles.NONE;
 
-    private static Boolean invokeBooleanGetter(Object obj, String getter) {
-        Method m = findMethod(obj.getClass(), getter);
-        if (m == null) return null;
-        try {
-            Object v = m.invoke(obj);
-            if (v instanceof Boolean) return (Boolean) v;
-            return null;
-        } catch (Exception e) {
-            return null;
+        Map<String, String> described = new TreeMap<>();
+        Map<String, File> dirs = new TreeMap<>();
+        for (Object profile : profiles) {
+            if (profile == null) continue;
+            String name = bridge.getProfileName(profile);
+            if (name == null) continue;
+            boolean relevant = matcher.isEmpty() ? Boolean.TRUE.equals(bridge.isProfileEnabled(profile)) : matcher.matches(name);
+            if (!relevant) continue;
+            described.put(name, bridge.describeProfile(profile));
+            File dir = bridge.getProfileGenerationDir(profile);
+            // CLion's default for profiles without one
+            if (dir == null) dir = new File("cmake-build-" + FileUtil.sanitizeFileName(name.toLowerCase(Locale.ROOT).replace(' ', '-')));
+            dirs.put(name, dir.isAbsolute() ? dir : new File(sourceDir, dir.getPath()));
         }
+        StringBuilder sb = new StringBuilder();
+        described.forEach((name, desc) -> sb.append("[").append(name).append("]\n").append(desc));
+        return new ConfiguredProfiles(sb.toString(), dirs);
     }
 
-    private static String firstNonNull(String a, String b) {
-        return a != null ? a : b;
+    /** Ask CLion to reload the CMake project so newly enabled profiles get configured. */
+    static boolean scheduleCMakeReload(@NotNull Project project) {
+        CMakeMuxClionBridge bridge = CMakeMuxClionBridge.getInstance();
+        Object ws = bridge.getWorkspace(project);
+        if (ws == null) {
+            LOG.warn("[CMakeMux] CMakeWorkspace instance is null, bail out.");
+            return false;
+        }
+        return bridge.scheduleReload(ws);
     }
 
     private CMakeMuxPresetHandler() {
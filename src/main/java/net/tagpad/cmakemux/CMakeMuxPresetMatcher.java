@@ -0,0 +1,108 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled form of an entry's preset regexps.
+ * All patterns are folded into one case-insensitive alternation so each profile name is scanned once.
+ * Patterns using back-references or clashing named groups cannot be combined safely; then each pattern is tried in turn.
+ * The result for the last seen list of profile names is memoized.
+ */
+public final class CMakeMuxPresetMatcher {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxPresetMatcher.class);
+
+    // Group numbers shift inside an alternation, so these would silently change meaning
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+    static final CMakeMuxPresetMatcher EMPTY = new CMakeMuxPresetMatcher(List.of(), List.of());
+
+    private final List<String> regexps;
+    private final List<Pattern> patterns;
+
+    // Last (names -> matched names) result; names are compared by value
+    private volatile Memo memo;
+
+    private CMakeMuxPresetMatcher(List<String> regexps, List<Pattern> patterns) {
+        this.regexps = regexps;
+        this.patterns = patterns;
+    }
+
+    /** Compiles the regexps; invalid ones are logged and skipped. */
+    public static @NotNull CMakeMuxPresetMatcher compile(@NotNull List<String> regexps) {
+        if (regexps.isEmpty()) return EMPTY;
+
+        List<Pattern> valid = new ArrayList<>();
+        List<String> validSources = new ArrayList<>();
+        boolean combinable = true;
+        for (String re : regexps) {
+            if (re == null || re.isEmpty()) continue;
+            try {
+                valid.add(Pattern.compile(re, Pattern.CASE_INSENSITIVE));
+                validSources.add(re);
+                if (BACK_REFERENCE.matcher(re).find()) combinable = false;
+            } catch (PatternSyntaxException e) {
+                LOG.warn("[CMakeMux] Ignoring invalid preset regexp '" + re + "': " + e.getDescription());
+            }
+        }
+
+        List<Pattern> patterns = valid;
+        if (combinable && valid.size() > 1) {
+            StringBuilder sb = new StringBuilder();
+            for (String re : validSources) {
+                if (sb.length() > 0) sb.append('|');
+                sb.append("(?:").append(re).append(')');
+            }
+            try {
+                patterns = List.of(Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE));
+            } catch (PatternSyntaxException e) {
+                // e.g. the same named group in two patterns; keep them separate
+                LOG.debug("[CMakeMux] Cannot combine preset regexps: " + e.getDescription());
+            }
+        }
+        return new CMakeMuxPresetMatcher(Collections.unmodifiableList(new ArrayList<>(regexps)), List.copyOf(patterns));
+    }
+
+    /** The regexps this matcher was compiled from, as given. */
+    public @NotNull List<String> getRegexps() {
+        return regexps;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    public boolean matches(@NotNull String name) {
+        for (Pattern p : patterns) {
+            if (p.matcher(name).find()) return true;
+        }
+        return false;
+    }
+
+    /** Names (in input order) matched by any regexp. Repeated calls with the same names reuse the last result. */
+    public @NotNull Set<String> matchAll(@NotNull List<String> names) {
+        if (patterns.isEmpty()) return Set.of();
+        Memo m = memo;
+        if (m != null && m.names.equals(names)) {
+            return m.matched;
+        }
+        Set<String> matched = new LinkedHashSet<>();
+        for (String name : names) {
+            if (matches(name)) matched.add(name);
+        }
+        Set<String> result = Collections.unmodifiableSet(matched);
+        memo = new Memo(List.copyOf(names), result);
+        return result;
+    }
+
+    private record Memo(List<String> names, Set<String> matched) {
+    }
+}
@@ -0,0 +1,408 @@
+package net.tagpad.cmakemux;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Reads the configure presets of a source directory straight from CMakePresets.json and CMakeUserPresets.json,
+ * following {@code include} chains, resolving {@code inherits} and evaluating {@code condition},
+ * so the presets an entry's regexps will match are known without CLion.
+ * Files are read with a streaming JSON reader and cached per file by modification time and size, in a small LRU cache.
+ */
+final class CMakeMuxPresetsParser {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxPresetsParser.class);
+
+    private static final String PRESETS = CMakeMuxProfileSnapshot.PRESETS_FILES[0];
+    private static final String USER_PRESETS = CMakeMuxProfileSnapshot.PRESETS_FILES[1];
+
+    private static final Pattern MACRO = Pattern.compile("\\$(\\w*)\\{([^}]*)}");
+
+    // Presets files of a few source trees, each with its includes, fit easily; the least recently used go first
+    private static final int CACHE_SIZE = 64;
+
+    // Absolute path -> parsed content at the given stamp; access-ordered, guarded by itself
+    private static final Map<String, ParsedFile> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ParsedFile> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    /** A configure preset after inheritance; hidden presets and presets whose condition is false are never returned. */
+    record Preset(@NotNull String name, @Nullable String displayName, @Nullable String generator) {
+    }
+
+    // As written in one file, before inheritance
+    private record RawPreset(String name, boolean hidden, List<String> inherits, @Nullable String displayName,
+                             @Nullable String generator, @Nullable Condition condition) {
+    }
+
+    private record ParsedFile(long modified, long length, List<String> includes, List<RawPreset> presets) {
+    }
+
+    private CMakeMuxPresetsParser() {}
+
+    /** Visible configure presets of the directory, in file order. Touches the file system; call off the EDT. */
+    static @NotNull List<Preset> configurePresets(@NotNull File sourceDir) {
+        Map<String, RawPreset> raw = new LinkedHashMap<>();
+        collectAll(sourceDir, raw, new LinkedHashSet<>());
+
+        List<Preset> result = new ArrayList<>();
+        for (RawPreset p : raw.values()) {
+            if (p.hidden) continue;
+            Condition condition = inherited(p, raw, RawPreset::condition, new HashSet<>());
+            if (condition != null && !condition.holds(macros(sourceDir, p.name))) continue;
+            // displayName is one of the fields CMake does not inherit
+            result.add(new Preset(p.name, p.displayName, inherited(p, raw, RawPreset::generator, new HashSet<>())));
+        }
+        return result;
+    }
+
+    /** Every presets file of the directory that exists, the top-level ones first, then the include chain in order. */
+    static @NotNull List<File> presetsFiles(@NotNull File sourceDir) {
+        Set<String> visited = new LinkedHashSet<>();
+        collectAll(sourceDir, new LinkedHashMap<>(), visited);
+        List<File> files = new ArrayList<>();
+        for (String path : visited) {
+            File f = new File(path);
+            if (f.isFile()) files.add(f);
+        }
+        return files;
+    }
+
+    /** The directory's visible configure presets matched by the entry's regexps, in file order. */
+    static @NotNull List<Preset> matchedPresets(@NotNull CMakeMuxEntry entry) {
+        CMakeMuxPresetMatcher matcher = entry.getPresetMatcher();
+        if (matcher.isEmpty() || entry.getPath() == null) return List.of();
+        File dir = new File(entry.getPath()).getParentFile();
+        if (dir == null) return List.of();
+        List<Preset> matched = new ArrayList<>();
+        for (Preset p : configurePresets(dir)) {
+            if (matcher.matches(p.name())) matched.add(p);
+        }
+        return matched;
+    }
+
+    // Own value first, then the parents in order, depth first (CMake's rule)
+    private static <T> @Nullable T inherited(RawPreset p, Map<String, RawPreset> all,
+                                             Function<RawPreset, T> field, Set<String> seen) {
+        if (!seen.add(p.name)) return null; // inheritance cycle
+        T own = field.apply(p);
+        if (own != null) return own;
+        for (String parentName : p.inherits) {
+            RawPreset parent = all.get(parentName);
+            if (parent == null) continue;
+            T v = inherited(parent, all, field, seen);
+            if (v != null) return v;
+        }
+        return null;
+    }
+
+    private static void collectAll(File sourceDir, Map<String, RawPreset> into, Set<String> visited) {
+        collect(new File(sourceDir, PRESETS), into, visited);
+        // CMakeUserPresets.json implicitly includes CMakePresets.json, which is then already visited
+        collect(new File(sourceDir, USER_PRESETS), into, visited);
+    }
+
+    private static void collect(File file, Map<String, RawPreset> into, Set<String> visited) {
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException e) {
+            key = file.getAbsolutePath();
+        }
+        if (!visited.add(key)) return;
+        if (!file.isFile()) {
+            CACHE.remove(key);
+            return;
+        }
+        ParsedFile parsed = parse(key, file);
+        if (parsed == null) return;
+        File dir = file.getParentFile();
+        for (String include : parsed.includes) {
+            File f = new File(include);
+            collect(f.isAbsolute() ? f : new File(dir, include), into, visited);
+        }
+        // The same name in two files is an error for CMake; keep the first one
+        for (RawPreset p : parsed.presets) into.putIfAbsent(p.name, p);
+    }
+
+    private static @Nullable ParsedFile parse(String key, File file) {
+        long modified = file.lastModified();
+        long length = file.length();
+        ParsedFile cached = CACHE.get(key);
+        if (cached != null && cached.modified == modified && cached.length == length) return cached;
+
+        try (Reader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(r)) {
+            ParsedFile parsed = readFile(json, modified, length);
+            CACHE.put(key, parsed);
+            return parsed;
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("[CMakeMux] Cannot parse " + file + ": " + e.getMessage());
+            CACHE.remove(key);
+            return null;
+        }
+    }
+
+    private static ParsedFile readFile(JsonReader json, long modified, long length) throws IOException {
+        List<String> includes = new ArrayList<>();
+        List<RawPreset> presets = new ArrayList<>();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "include" -> includes.addAll(readStrings(json));
+                case "configurePresets" -> {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        RawPreset p = readPreset(json);
+                        if (p != null) presets.add(p);
+                    }
+                    json.endArray();
+                }
+                // build/test/package/workflow presets and vendor data are of no interest
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new ParsedFile(modified, length, includes, presets);
+    }
+
+    private static @Nullable RawPreset readPreset(JsonReader json) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return null;
+        }
+        String name = null;
+        boolean hidden = false;
+        List<String> inherits = List.of();
+        String displayName = null;
+        String generator = null;
+        Condition condition = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "name" -> name = readString(json);
+                case "hidden" -> hidden = readBoolean(json);
+                case "inherits" -> inherits = readStrings(json);
+                case "displayName" -> displayName = readString(json);
+                case "generator" -> generator = readString(json);
+                case "condition" -> condition = readCondition(json);
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return name == null || name.isEmpty() ? null : new RawPreset(name, hidden, inherits, displayName, generator, condition);
+    }
+
+    // Conditions
+
+    /** A preset condition; see the "Condition" section of cmake-presets(7). */
+    private record Condition(String type, boolean value, @Nullable String lhs, @Nullable String rhs,
+                             @Nullable String string, List<String> list, @Nullable String regex,
+                             List<Condition> conditions) {
+        static final Condition TRUE = new Condition("const", true, null, null, null, List.of(), null, List.of());
+        static final Condition FALSE = new Condition("const", false, null, null, null, List.of(), null, List.of());
+
+        // Anything that cannot be evaluated here counts as true, so no preset is hidden by mistake
+        boolean holds(Map<String, String> macros) {
+            switch (type) {
+                case "const":
+                    return value;
+                case "equals":
+                case "notEquals": {
+                    String l = expand(lhs, macros);
+                    String r = expand(rhs, macros);
+                    if (l == null || r == null) return true;
+                    return l.equals(r) == type.equals("equals");
+                }
+                case "inList":
+                case "notInList": {
+                    String s = expand(string, macros);
+                    if (s == null) return true;
+                    boolean found = false;
+                    for (String item : list) {
+                        String v = expand(item, macros);
+                        if (v == null) return true;
+                        if (v.equals(s)) found = true;
+                    }
+                    return found == type.equals("inList");
+                }
+                case "matches":
+                case "notMatches": {
+                    String s = expand(string, macros);
+                    String re = expand(regex, macros);
+                    if (s == null || re == null) return true;
+                    try {
+                        return Pattern.compile(re).matcher(s).find() == type.equals("matches");
+                    } catch (PatternSyntaxException e) {
+                        return true;
+                    }
+                }
+                case "anyOf": {
+                    // An empty anyOf holds for nothing
+                    for (Condition c : conditions) if (c.holds(macros)) return true;
+                    return false;
+                }
+                case "allOf": {
+                    for (Condition c : conditions) if (!c.holds(macros)) return false;
+                    return true;
+                }
+                case "not":
+                    return conditions.isEmpty() || !conditions.get(0).holds(macros);
+                default:
+                    return true;
+            }
+        }
+    }
+
+    private static @Nullable Condition readCondition(JsonReader json) throws IOException {
+        JsonToken token = json.peek();
+        if (token == JsonToken.BOOLEAN) return json.nextBoolean() ? Condition.TRUE : Condition.FALSE;
+        if (token != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return null;
+        }
+        String type = null;
+        boolean value = true;
+        String lhs = null;
+        String rhs = null;
+        String string = null;
+        List<String> list = List.of();
+        String regex = null;
+        List<Condition> conditions = new ArrayList<>();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "type" -> type = readString(json);
+                case "value" -> value = readBoolean(json);
+                case "lhs" -> lhs = readString(json);
+                case "rhs" -> rhs = readString(json);
+                case "string" -> string = readString(json);
+                case "list" -> list = readStrings(json);
+                case "regex" -> regex = readString(json);
+                case "condition" -> {
+                    Condition c = readCondition(json);
+                    if (c != null) conditions.add(c);
+                }
+                case "conditions" -> {
+                    if (json.peek() != JsonToken.BEGIN_ARRAY) {
+                        json.skipValue();
+                        continue;
+                    }
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        Condition c = readCondition(json);
+                        if (c != null) conditions.add(c);
+                    }
+                    json.endArray();
+                }
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return type == null ? null : new Condition(type, value, lhs, rhs, string, list, regex, conditions);
+    }
+
+    private static Map<String, String> macros(File sourceDir, String presetName) {
+        Map<String, String> m = new LinkedHashMap<>();
+        String dir = sourceDir.getAbsolutePath();
+        m.put("sourceDir", dir);
+        File parent = sourceDir.getAbsoluteFile().getParentFile();
+        m.put("sourceParentDir", parent != null ? parent.getPath() : "");
+        m.put("sourceDirName", sourceDir.getName());
+        m.put("presetName", presetName);
+        m.put("hostSystemName", hostSystemName());
+        m.put("dollar", "$");
+        m.put("pathListSep", File.pathSeparator);
+        return m;
+    }
+
+    // CMAKE_HOST_SYSTEM_NAME
+    private static String hostSystemName() {
+        String os = System.getProperty("os.name", "");
+        String lower = os.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("windows")) return "Windows";
+        if (lower.startsWith("mac")) return "Darwin";
+        return os;
+    }
+
+    // Expands preset macros; null when the value is absent or uses a macro that cannot be resolved here
+    private static @Nullable String expand(@Nullable String value, Map<String, String> macros) {
+        if (value == null) return null;
+        Matcher m = MACRO.matcher(value);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            String namespace = m.group(1);
+            String name = m.group(2);
+            String replacement;
+            if (namespace.isEmpty()) {
+                replacement = macros.get(name);
+            } else if (namespace.equals("env") || namespace.equals("penv")) {
+                // The preset's own environment is not modelled; the IDE's environment is the closest match
+                replacement = System.getenv(name);
+                if (replacement == null) replacement = "";
+            } else {
+                replacement = null; // $vendor{...} and unknown namespaces
+            }
+            if (replacement == null) return null;
+            m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    // JSON helpers
+
+    private static @Nullable String readString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.STRING) return json.nextString();
+        json.skipValue();
+        return null;
+    }
+
+    private static boolean readBoolean(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.BOOLEAN) return json.nextBoolean();
+        json.skipValue();
+        return false;
+    }
+
+    // A single string or an array of strings
+    private static List<String> readStrings(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.STRING) return List.of(json.nextString());
+        if (json.peek() != JsonToken.BEGIN_ARRAY) {
+            json.skipValue();
+            return List.of();
+        }
+        Set<String> values = new LinkedHashSet<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            String s = readString(json);
+            if (s != null) values.add(s);
+        }
+        json.endArray();
+        return new ArrayList<>(values);
+    }
+}
@@ -0,0 +1,89 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.util.xmlb.annotations.Attribute;
+import com.intellij.util.xmlb.annotations.Tag;
+import com.intellij.util.xmlb.annotations.XCollection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Profile names an entry's regexps resolved to on its last switch, plus a fingerprint of the inputs
+ * (presets files and regexps). While the fingerprint is unchanged the names can be applied directly.
+ */
+@Tag("profileSnapshot")
+public class CMakeMuxProfileSnapshot {
+    static final String[] PRESETS_FILES = {"CMakePresets.json", "CMakeUserPresets.json"};
+
+    @Attribute("fingerprint")
+    private String fingerprint;
+
+    private List<String> profileNames = new ArrayList<>();
+
+    // Required for XML serialization
+    public CMakeMuxProfileSnapshot() {
+    }
+
+    public CMakeMuxProfileSnapshot(@NotNull String fingerprint, @NotNull List<String> profileNames) {
+        this.fingerprint = fingerprint;
+        this.profileNames = new ArrayList<>(profileNames);
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    @Tag("names")
+    @XCollection(style = XCollection.Style.v2, elementName = "name")
+    public List<String> getProfileNames() {
+        return profileNames;
+    }
+
+    public void setProfileNames(List<String> profileNames) {
+        this.profileNames = (profileNames == null) ? new ArrayList<>() : new ArrayList<>(profileNames);
+    }
+
+    /**
+     * Fingerprint of the presets files next to the entry's CMakeLists.txt and the files they include
+     * (size and timestamp), and of its regexps.
+     * Touches the file system; call off the EDT.
+     */
+    static @Nullable String computeFingerprint(@NotNull CMakeMuxEntry entry) {
+        if (entry.getPath() == null) return null;
+        File dir = new File(entry.getPath()).getParentFile();
+        if (dir == null) return null;
+
+        StringBuilder sb = new StringBuilder();
+        for (String name : PRESETS_FILES) {
+            File f = new File(dir, name);
+            sb.append(name).append(':');
+            if (f.isFile()) {
+                sb.append(f.length()).append(':').append(f.lastModified());
+            } else {
+                sb.append('-');
+            }
+            sb.append(';');
+        }
+        // Files pulled in through 'include', wherever they live
+        for (File f : CMakeMuxPresetsParser.presetsFiles(dir)) {
+            if (dir.equals(f.getParentFile()) && isTopLevel(f.getName())) continue;
+            sb.append(f.getPath()).append(':').append(f.length()).append(':').append(f.lastModified()).append(';');
+        }
+        sb.append("re:").append(Integer.toHexString(String.join("\n", entry.getRegexps()).hashCode()));
+        return sb.toString();
+    }
+
+    private static boolean isTopLevel(String name) {
+        for (String n : PRESETS_FILES) {
+            if (n.equals(name)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,185 @@
+package net.tagpad.cmakemux;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Trigram index over the nicknames and paths of one entry list, for filtering as the user types.
+ * Query words of three or more characters narrow the candidates through the index before anything is compared;
+ * shorter words are checked directly. Every word must occur in the nickname or path (case-insensitive).
+ * When nothing contains the query, nicknames are matched as a subsequence ("cmx" finds "CMake Mux").
+ * Built once per published state version, see {@link CMakeMuxState.Snapshot#getSearchIndex()}.
+ */
+final class CMakeMuxSearchIndex {
+    private static final int GRAM = 3;
+    private static final int MAX_WORD_SCORE = 4;
+
+    private final List<CMakeMuxEntry> entries;
+    private final String[] nicknames;
+    private final String[] dirNames;
+    private final String[] paths;
+    // Trigram -> ascending entry indices
+    private final Map<Long, int[]> postings;
+
+    private CMakeMuxSearchIndex(List<CMakeMuxEntry> entries, String[] nicknames, String[] dirNames, String[] paths,
+                                Map<Long, int[]> postings) {
+        this.entries = entries;
+        this.nicknames = nicknames;
+        this.dirNames = dirNames;
+        this.paths = paths;
+        this.postings = postings;
+    }
+
+    static @NotNull CMakeMuxSearchIndex build(@NotNull List<CMakeMuxEntry> entries) {
+        int n = entries.size();
+        String[] nicknames = new String[n];
+        String[] dirNames = new String[n];
+        String[] paths = new String[n];
+        Map<Long, IntBuffer> building = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            CMakeMuxEntry e = entries.get(i);
+            nicknames[i] = lower(e.getNickname());
+            paths[i] = lower(e.getPath());
+            dirNames[i] = dirName(paths[i]);
+            addGrams(building, nicknames[i], i);
+            addGrams(building, paths[i], i);
+        }
+        Map<Long, int[]> postings = new HashMap<>(building.size() * 2);
+        building.forEach((gram, buffer) -> postings.put(gram, buffer.toArray()));
+        return new CMakeMuxSearchIndex(entries, nicknames, dirNames, paths, postings);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /** Matching entries, best first; ties keep the list order. An empty query returns the first {@code limit} entries. */
+    @NotNull List<CMakeMuxEntry> search(@NotNull String query, int limit) {
+        String[] words = lower(query).trim().split("\\s+");
+        if (words.length == 0 || words[0].isEmpty()) {
+            return entries.subList(0, Math.min(limit, entries.size()));
+        }
+
+        int[] candidates = null; // null: all entries
+        for (String w : words) {
+            if (w.length() < GRAM) continue;
+            for (int i = 0; i + GRAM <= w.length(); i++) {
+                int[] list = postings.get(gram(w, i));
+                if (list == null) {
+                    candidates = new int[0];
+                    break;
+                }
+                candidates = candidates == null ? list : intersect(candidates, list);
+            }
+            if (candidates != null && candidates.length == 0) break;
+        }
+
+        // Scores are small, so bucket by score instead of sorting; buckets keep the list order
+        IntBuffer[] buckets = new IntBuffer[MAX_WORD_SCORE * words.length + 1];
+        boolean any = false;
+        int count = candidates == null ? entries.size() : candidates.length;
+        for (int k = 0; k < count; k++) {
+            any |= score(candidates == null ? k : candidates[k], words, buckets);
+            // Later entries cannot beat a full bucket of best scores
+            if (buckets[0] != null && buckets[0].size >= limit) break;
+        }
+        if (!any) {
+            String compact = String.join("", words);
+            IntBuffer fuzzy = buckets[0] = new IntBuffer();
+            for (int i = 0; i < entries.size(); i++) {
+                if (isSubsequence(compact, nicknames[i])) fuzzy.addOnce(i);
+            }
+        }
+
+        List<CMakeMuxEntry> result = new ArrayList<>();
+        for (IntBuffer bucket : buckets) {
+            if (bucket == null) continue;
+            for (int k = 0; k < bucket.size && result.size() < limit; k++) result.add(entries.get(bucket.values[k]));
+        }
+        return result;
+    }
+
+    // Lower is better: nickname prefix, word in nickname, anywhere in nickname, directory name, anywhere in the path
+    private boolean score(int i, String[] words, IntBuffer[] buckets) {
+        int total = 0;
+        for (String w : words) {
+            String nick = nicknames[i];
+            int at = nick.indexOf(w);
+            if (at == 0) total += 0;
+            else if (at > 0 && !Character.isLetterOrDigit(nick.charAt(at - 1))) total += 1;
+            else if (at > 0) total += 2;
+            else if (dirNames[i].contains(w)) total += 3;
+            else if (paths[i].contains(w)) total += MAX_WORD_SCORE;
+            else return false; // every word must match
+        }
+        IntBuffer bucket = buckets[total];
+        if (bucket == null) bucket = buckets[total] = new IntBuffer();
+        bucket.addOnce(i);
+        return true;
+    }
+
+    private static boolean isSubsequence(String needle, String haystack) {
+        int j = 0;
+        for (int i = 0; i < haystack.length() && j < needle.length(); i++) {
+            if (haystack.charAt(i) == needle.charAt(j)) j++;
+        }
+        return j == needle.length();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return k == out.length ? out : Arrays.copyOf(out, k);
+    }
+
+    private static void addGrams(Map<Long, IntBuffer> building, String text, int entry) {
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            building.computeIfAbsent(gram(text, i), g -> new IntBuffer()).addOnce(entry);
+        }
+    }
+
+    private static long gram(String s, int at) {
+        return ((long) s.charAt(at) << 32) | ((long) s.charAt(at + 1) << 16) | s.charAt(at + 2);
+    }
+
+    private static String lower(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static String dirName(String path) {
+        int end = path.lastIndexOf('/');
+        if (end <= 0) return path;
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    // Growable postings list; entries are added in ascending order
+    private static final class IntBuffer {
+        private int[] values = new int[4];
+        private int size;
+
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) return;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
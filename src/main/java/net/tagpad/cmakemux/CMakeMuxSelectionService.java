@@ -3,16 +3,37 @@ package net.tagpad.cmakemux;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.actionSystem.ex.AnActionListener;
+import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Tracks the active CMakeLists.txt. The last one is kept in the workspace file and restored at startup
+ * without any detection; it is checked for existence in the background afterwards.
+ */
 @Service(Service.Level.PROJECT)
-public final class CMakeMuxSelectionService implements Disposable {
+@State(name = "CMakeMuxSelection", storages = @Storage(StoragePathMacros.WORKSPACE_FILE))
+public final class CMakeMuxSelectionService implements PersistentStateComponent<CMakeMuxSelectionService.State>, Disposable {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxSelectionService.class);
+
+    public static class State {
+        public @Nullable String activePath;
+        // Epoch millis when the active path last changed
+        public long activatedAt;
+    }
+
     private final Project project;
     private volatile @Nullable String activePath;
+    private volatile long activatedAt;
+    private volatile @Nullable CMakeMuxSwitch currentSwitch;
 
     public CMakeMuxSelectionService(Project project) {
         this.project = project;
@@ -48,12 +69,55 @@ public final class CMakeMuxSelectionService implements Disposable {
         return activePath;
     }
 
+    /** Epoch millis when the active path last changed, 0 if unknown. */
+    public long getActivatedAt() {
+        return activatedAt;
+    }
+
     public void setActivePath(@Nullable String path) {
         if (path != null && path.equals(activePath)) return;
         this.activePath = path;
+        this.activatedAt = System.currentTimeMillis();
         project.getMessageBus().syncPublisher(CMakeMuxSelectionEvents.TOPIC).activeSelectionChanged();
     }
 
+    /** The most recently started switch; it may already be done. */
+    public @Nullable CMakeMuxSwitch getCurrentSwitch() {
+        return currentSwitch;
+    }
+
+    void setCurrentSwitch(@Nullable CMakeMuxSwitch sw) {
+        this.currentSwitch = sw;
+    }
+
+    @Override
+    public @NotNull State getState() {
+        State state = new State();
+        state.activePath = activePath;
+        state.activatedAt = activatedAt;
+        return state;
+    }
+
+    @Override
+    public void loadState(@NotNull State state) {
+        // Restore without notifying; nothing is listening this early
+        this.activePath = state.activePath;
+        this.activatedAt = state.activatedAt;
+        if (state.activePath != null) {
+            String restored = state.activePath;
+            AppExecutorUtil.getAppExecutorService().execute(() -> validateRestored(restored));
+        }
+    }
+
+    // The file may be gone since the last session; CMake load notifications correct everything else
+    private void validateRestored(String restored) {
+        if (project.isDisposed() || !restored.equals(activePath)) return;
+        if (!new java.io.File(restored).isFile()) {
+            LOG.info("[CMakeMux] Restored active CMakeLists.txt no longer exists: " + restored);
+            setActivePath(null);
+        }
+    }
+
     @Override
     public void dispose() {
         // No-op; connection is disposed automatically because connect(this) was used
@@ -5,7 +5,9 @@ import com.intellij.openapi.components.Service;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service(Service.Level.PROJECT)
 public final class CMakeMuxService {
@@ -19,27 +21,43 @@ public final class CMakeMuxService {
         return project.getService(CMakeMuxService.class);
     }
 
+    /** Entries of the current state snapshot; immutable, safe to iterate on any thread. */
     public List<CMakeMuxEntry> getEntries() {
         return CMakeMuxState.getInstance(project).getEntries();
     }
 
     public void addOrReplace(@NotNull CMakeMuxEntry entry) {
-        ApplicationManager.getApplication().runWriteAction(() -> {
-            CMakeMuxState.getInstance(project).addOrReplace(entry);
-            // Notify listeners on the UI thread
-            ApplicationManager.getApplication().invokeLater(() ->
-                    project.getMessageBus().syncPublisher(CMakeMuxEvents.TOPIC).entriesChanged()
-            );
-        });
+        batch(editor -> editor.addOrReplace(entry));
     }
 
     public void removeByPath(@NotNull String path) {
-        ApplicationManager.getApplication().runWriteAction(() -> {
-            CMakeMuxState.getInstance(project).removeByPath(path);
+        batch(editor -> editor.remove(path));
+    }
+
+    public void addOrReplaceAll(@NotNull Collection<CMakeMuxEntry> entries) {
+        if (entries.isEmpty()) return;
+        batch(editor -> entries.forEach(editor::addOrReplace));
+    }
+
+    public void removeAllByPath(@NotNull Collection<String> paths) {
+        if (paths.isEmpty()) return;
+        batch(editor -> paths.forEach(editor::remove));
+    }
+
+    /**
+     * Applies any mix of adds, updates, removes and reorders in one write action
+     * and notifies listeners once with the combined delta.
+     */
+    public @NotNull CMakeMuxEntriesDelta batch(@NotNull Consumer<CMakeMuxState.Editor> changes) {
+        CMakeMuxEntriesDelta[] result = {CMakeMuxEntriesDelta.of(List.of())};
+        ApplicationManager.getApplication().runWriteAction(() -> result[0] = CMakeMuxState.getInstance(project).edit(changes));
+        CMakeMuxEntriesDelta delta = result[0];
+        if (!delta.isEmpty()) {
             // Notify listeners on the UI thread
             ApplicationManager.getApplication().invokeLater(() ->
-                    project.getMessageBus().syncPublisher(CMakeMuxEvents.TOPIC).entriesChanged()
+                    project.getMessageBus().syncPublisher(CMakeMuxEvents.TOPIC).entriesChanged(delta)
             );
-        });
+        }
+        return delta;
     }
-}
\ No newline at end of file
+}
@@ -7,20 +7,25 @@ import kotlin.Unit;
 import kotlin.coroutines.Continuation;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import java.util.concurrent.CompletableFuture;
 
-/** Initializes the active CMakeLists.txt path on project startup so UI/popup can highlight it. */
+/** Starts the services that keep the active CMakeLists.txt, entry health and background configure up to date. */
 public class CMakeMuxStartupActivity implements ProjectActivity, DumbAware {
     @Override
     public @Nullable Object execute(@NotNull Project project, @NotNull Continuation<? super Unit> continuation) {
-        // If already set (e.g., persisted), do nothing.
-        if (CMakeMuxSelectionService.getInstance(project).getActivePath() != null) {
-            return null; // synchronous completion
-        }
+        // Runs in the background; only creates services, never waits for or calls into the EDT
 
-        // Best-effort detection: try now and then a few delayed attempts.
-        CMakeMuxActiveDetector.detectAndSetActiveBestEffort(project, 5, 200L);
+        // Restores the persisted active path right away
+        CMakeMuxSelectionService.getInstance(project);
 
-        return CompletableFuture.completedFuture(null);
+        // Start following file changes of pinned entries
+        CMakeMuxHealthTracker.getInstance(project);
+
+        // Detects the active project now and after every CMake load; no polling
+        CMakeMuxWorkspaceWatcher.getInstance(project);
+
+        // Idle unless background configure is turned on
+        CMakeMuxPreconfigure.getInstance(project);
+
+        return Unit.INSTANCE;
     }
-}
\ No newline at end of file
+}
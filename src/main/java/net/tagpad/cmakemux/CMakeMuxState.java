@@ -2,15 +2,24 @@ package net.tagpad.cmakemux;
 
 import com.intellij.openapi.components.*;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.CollectionFactory;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /** Project-level persisted state.
- *  Stored in a dedicated file (cmake-mux.xml). Legacy data is read from workspace.xml. */
+ *  Stored in a dedicated file (cmake-mux.xml). Legacy data is read from workspace.xml.
+ *  Entries are published as immutable, versioned {@link Snapshot}s: readers take the current one
+ *  without locking, writers (in write actions) copy, change and publish a new version.
+ *  Published entries must not be mutated; change them through {@link CMakeMuxService#batch}, which also notifies
+ *  {@link CMakeMuxEvents} listeners. */
 @State(
         name = "CMakeMuxState",
         storages = {
@@ -19,13 +28,84 @@ import java.util.List;
         }
 )
 public class CMakeMuxState implements PersistentStateComponent<CMakeMuxState.State> {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxState.class);
 
     public static class State {
         public List<CMakeMuxEntry> entries = new ArrayList<>();
+        // Enable presets before the first configure instead of reloading a second time
+        public boolean singleReloadSwitching = false;
+        // Show the most frecent entries first in the load popup
+        public boolean frecencyRanking = false;
+        // Give every entry its own build directories so switching back finds a warm tree
+        public boolean warmBuildDirs = false;
+        // Root of the warm build directories; empty means .cmake-mux/build in the project
+        public String buildDirRoot = "";
+        // Disk budget for all warm build directories together, in megabytes
+        public int buildDirBudgetMb = 20 * 1024;
+        // Configure recently used entries into their warm build directories in the background
+        public boolean backgroundConfigure = false;
+        // How many of the most recently used entries to keep configured
+        public int backgroundConfigureCount = 2;
+        // CMake executable for background configure; empty means cmake from PATH
+        public String cmakeExecutable = "";
+    }
+
+    /** One published version of the entry list with its path index. */
+    public static final class Snapshot {
+        private final List<CMakeMuxEntry> entries;
+        // Normalized path -> position; follows the file system's case sensitivity
+        private final Map<String, Integer> positions;
+        private final long version;
+        // Built on first search, then shared by everyone reading this version
+        private volatile @Nullable CMakeMuxSearchIndex searchIndex;
+
+        private Snapshot(List<CMakeMuxEntry> entries, Map<String, Integer> positions, long version) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.positions = positions;
+            this.version = version;
+        }
+
+        /** Entries in display order. */
+        public @NotNull List<CMakeMuxEntry> getEntries() {
+            return entries;
+        }
+
+        /** Increases with every published change. */
+        public long getVersion() {
+            return version;
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        public @Nullable CMakeMuxEntry findByPath(@Nullable String path) {
+            int i = indexOf(path);
+            return i >= 0 ? entries.get(i) : null;
+        }
+
+        /** Position of the entry with this path, or -1. */
+        public int indexOf(@Nullable String path) {
+            if (path == null) return -1;
+            Integer i = positions.get(key(path));
+            return i != null ? i : -1;
+        }
+
+        /** Search index over these entries. */
+        @NotNull CMakeMuxSearchIndex getSearchIndex() {
+            CMakeMuxSearchIndex index = searchIndex;
+            if (index == null) {
+                index = CMakeMuxSearchIndex.build(entries);
+                searchIndex = index;
+            }
+            return index;
+        }
     }
 
     private final Project project;
+    // Scalar settings; entries live in the snapshot
     private final State state = new State();
+    private volatile Snapshot snapshot = new Snapshot(new ArrayList<>(), CollectionFactory.createFilePathMap(), 0);
 
     public CMakeMuxState(Project project) {
         this.project = project;
@@ -34,43 +114,255 @@ public class CMakeMuxState implements PersistentStateComponent<CMakeMuxState.Sta
     @Nullable
     @Override
     public State getState() {
+        state.entries = new ArrayList<>(snapshot.entries);
         return state;
     }
 
     @Override
-    public void loadState(@NotNull State state) {
-        this.state.entries = new ArrayList<>(state.entries);
-        // Normalize legacy paths on load
-        for (CMakeMuxEntry e : this.state.entries) {
-            if (e != null && e.getPath() != null) {
-                e.setPath(e.getPath());
-            }
-            if (e != null && e.getRegexps() == null) {
+    public synchronized void loadState(@NotNull State state) {
+        this.state.singleReloadSwitching = state.singleReloadSwitching;
+        this.state.frecencyRanking = state.frecencyRanking;
+        this.state.warmBuildDirs = state.warmBuildDirs;
+        this.state.buildDirRoot = state.buildDirRoot != null ? state.buildDirRoot : "";
+        this.state.buildDirBudgetMb = state.buildDirBudgetMb;
+        this.state.backgroundConfigure = state.backgroundConfigure;
+        this.state.backgroundConfigureCount = state.backgroundConfigureCount;
+        this.state.cmakeExecutable = state.cmakeExecutable != null ? state.cmakeExecutable : "";
+        List<CMakeMuxEntry> entries = new ArrayList<>();
+        Map<String, Integer> positions = CollectionFactory.createFilePathMap(state.entries.size());
+        for (CMakeMuxEntry e : state.entries) {
+            if (e == null || e.getPath() == null) continue;
+            // Normalize legacy paths on load
+            e.setPath(e.getPath());
+            if (e.getRegexps() == null) {
                 e.setRegexps(new ArrayList<>());
             }
+            if (positions.putIfAbsent(key(e.getPath()), entries.size()) != null) {
+                LOG.warn("[CMakeMux] Dropping duplicate entry for " + e.getPath());
+                continue;
+            }
+            entries.add(e);
         }
+        publish(entries, positions);
     }
 
     public static CMakeMuxState getInstance(Project project) {
         return project.getService(CMakeMuxState.class);
     }
 
+    /** The current version of the entries; safe to read from any thread. */
+    public @NotNull Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** Entries of the current snapshot; read-only. */
     public List<CMakeMuxEntry> getEntries() {
-        return state.entries;
+        return snapshot.entries;
+    }
+
+    public boolean isSingleReloadSwitching() {
+        return state.singleReloadSwitching;
+    }
+
+    public void setSingleReloadSwitching(boolean singleReloadSwitching) {
+        state.singleReloadSwitching = singleReloadSwitching;
+    }
+
+    public boolean isFrecencyRanking() {
+        return state.frecencyRanking;
+    }
+
+    public void setFrecencyRanking(boolean frecencyRanking) {
+        state.frecencyRanking = frecencyRanking;
+    }
+
+    public boolean isWarmBuildDirs() {
+        return state.warmBuildDirs;
+    }
+
+    public void setWarmBuildDirs(boolean warmBuildDirs) {
+        state.warmBuildDirs = warmBuildDirs;
+    }
+
+    public @NotNull String getBuildDirRoot() {
+        return state.buildDirRoot;
+    }
+
+    public void setBuildDirRoot(@NotNull String buildDirRoot) {
+        state.buildDirRoot = buildDirRoot;
+    }
+
+    public int getBuildDirBudgetMb() {
+        return state.buildDirBudgetMb;
+    }
+
+    public void setBuildDirBudgetMb(int buildDirBudgetMb) {
+        state.buildDirBudgetMb = buildDirBudgetMb;
+    }
+
+    public boolean isBackgroundConfigure() {
+        return state.backgroundConfigure;
+    }
+
+    public void setBackgroundConfigure(boolean backgroundConfigure) {
+        state.backgroundConfigure = backgroundConfigure;
+    }
+
+    public int getBackgroundConfigureCount() {
+        return state.backgroundConfigureCount;
+    }
+
+    public void setBackgroundConfigureCount(int backgroundConfigureCount) {
+        state.backgroundConfigureCount = backgroundConfigureCount;
+    }
+
+    public @NotNull String getCMakeExecutable() {
+        return state.cmakeExecutable;
+    }
+
+    public void setCMakeExecutable(@NotNull String cmakeExecutable) {
+        state.cmakeExecutable = cmakeExecutable;
+    }
+
+    public @Nullable CMakeMuxEntry findByPath(@Nullable String path) {
+        return snapshot.findByPath(path);
+    }
+
+    /** Position of the entry with this path in {@link #getEntries()}, or -1. */
+    public int indexOf(@Nullable String path) {
+        return snapshot.indexOf(path);
     }
 
     public void addOrReplace(CMakeMuxEntry entry) {
-        // Replace on same path; otherwise add.
-        for (int i = 0; i < state.entries.size(); i++) {
-            if (FileUtil.pathsEqual(state.entries.get(i).getPath(), entry.getPath())) {
-                state.entries.set(i, entry);
-                return;
+        edit(editor -> editor.addOrReplace(entry));
+    }
+
+    public void removeByPath(String path) {
+        edit(editor -> editor.remove(path));
+    }
+
+    /**
+     * Applies several changes to one working copy and publishes them as a single new snapshot.
+     * Returns what changed, in order; nothing is published when the delta is empty.
+     * Do not call other mutators of this state from {@code changes}.
+     */
+    public synchronized @NotNull CMakeMuxEntriesDelta edit(@NotNull Consumer<Editor> changes) {
+        Editor editor = new Editor(snapshot);
+        changes.accept(editor);
+        CMakeMuxEntriesDelta delta = editor.toDelta();
+        if (!delta.isEmpty()) publish(editor.entries, editor.positions);
+        return delta;
+    }
+
+    /** Mutable working copy handed out by {@link #edit}; only valid inside that call. */
+    public static final class Editor {
+        private List<CMakeMuxEntry> entries;
+        private Map<String, Integer> positions;
+        private final List<CMakeMuxEntriesDelta.Change> changes = new ArrayList<>();
+
+        private Editor(Snapshot base) {
+            entries = new ArrayList<>(base.entries);
+            positions = CollectionFactory.createFilePathMap(base.size() + 1);
+            positions.putAll(base.positions);
+        }
+
+        public @Nullable CMakeMuxEntry findByPath(@Nullable String path) {
+            if (path == null) return null;
+            Integer i = positions.get(key(path));
+            return i != null ? entries.get(i) : null;
+        }
+
+        public void addOrReplace(@NotNull CMakeMuxEntry entry) {
+            // Replace on same path; otherwise add.
+            String key = key(entry.getPath());
+            Integer i = positions.get(key);
+            if (i != null) {
+                entries.set(i, entry);
+                record(CMakeMuxEntriesDelta.Kind.UPDATED, i, entry);
+            } else {
+                positions.put(key, entries.size());
+                entries.add(entry);
+                record(CMakeMuxEntriesDelta.Kind.ADDED, entries.size() - 1, entry);
+            }
+        }
+
+        /** Replaces the entry with a changed copy; returns the copy, or null when there is no such entry. */
+        public @Nullable CMakeMuxEntry update(@NotNull String path, @NotNull Consumer<CMakeMuxEntry> change) {
+            Integer i = positions.get(key(path));
+            if (i == null) return null;
+            CMakeMuxEntry updated = entries.get(i).copy();
+            change.accept(updated);
+            // Paths are the index keys and must not change here
+            updated.setPath(entries.get(i).getPath());
+            entries.set(i, updated);
+            record(CMakeMuxEntriesDelta.Kind.UPDATED, i, updated);
+            return updated;
+        }
+
+        public boolean remove(@NotNull String path) {
+            Integer i = positions.remove(key(path));
+            if (i == null) return false;
+            CMakeMuxEntry removed = entries.remove((int) i);
+            for (int j = i; j < entries.size(); j++) {
+                positions.put(key(entries.get(j).getPath()), j);
+            }
+            record(CMakeMuxEntriesDelta.Kind.REMOVED, i, removed);
+            return true;
+        }
+
+        /**
+         * Replaces the order of the entries. {@code newOrder} must hold exactly the current entries (by path);
+         * otherwise nothing changes and false is returned. Recorded as the moves that produce the new order.
+         */
+        public boolean reorder(@NotNull List<CMakeMuxEntry> newOrder) {
+            if (newOrder.size() != entries.size()) return false;
+            Map<String, Integer> seen = CollectionFactory.createFilePathMap(newOrder.size());
+            for (CMakeMuxEntry e : newOrder) {
+                String key = key(e.getPath());
+                if (!positions.containsKey(key) || seen.put(key, seen.size()) != null) return false;
+            }
+            // Bring each entry into place from the front; everything before i is already in order
+            for (int i = 0; i < newOrder.size(); i++) {
+                int from = positions.get(key(newOrder.get(i).getPath()));
+                if (from != i) move(from, i);
+            }
+            return true;
+        }
+
+        /** Moves the entry with this path by {@code offset} rows; false when there is no such entry or it would leave the list. */
+        public boolean move(@NotNull String path, int offset) {
+            Integer from = positions.get(key(path));
+            if (from == null) return false;
+            int to = from + offset;
+            if (to < 0 || to >= entries.size()) return false;
+            if (to != from) move(from, to);
+            return true;
+        }
+
+        private void move(int from, int to) {
+            CMakeMuxEntry entry = entries.remove(from);
+            entries.add(to, entry);
+            for (int j = Math.min(from, to); j <= Math.max(from, to); j++) {
+                positions.put(key(entries.get(j).getPath()), j);
             }
+            changes.add(new CMakeMuxEntriesDelta.Change(CMakeMuxEntriesDelta.Kind.MOVED, from, to, entry));
+        }
+
+        private void record(CMakeMuxEntriesDelta.Kind kind, int index, CMakeMuxEntry entry) {
+            changes.add(new CMakeMuxEntriesDelta.Change(kind, index, index, entry));
+        }
+
+        private CMakeMuxEntriesDelta toDelta() {
+            return CMakeMuxEntriesDelta.of(changes);
         }
-        state.entries.add(entry);
     }
 
-    public void removeByPath(String path) {
-        state.entries.removeIf(e -> FileUtil.pathsEqual(e.getPath(), path));
+    private void publish(List<CMakeMuxEntry> entries, Map<String, Integer> positions) {
+        snapshot = new Snapshot(entries, positions, snapshot.version + 1);
+    }
+
+    // Same normalization as FileUtil.pathsEqual; case is handled by the map
+    private static String key(String path) {
+        return FileUtil.toCanonicalPath(path);
     }
-}
\ No newline at end of file
+}
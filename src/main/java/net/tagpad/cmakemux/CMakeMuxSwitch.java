@@ -0,0 +1,201 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** One switch to a {@link CMakeMuxEntry}: the last completed stage plus a future that completes when CMake has reloaded. */
+public final class CMakeMuxSwitch {
+
+    /** Stages in the order they complete. */
+    public enum Stage {
+        RESOLVE_FILE("resolving file"),
+        LOAD_PROJECT("loading project"),
+        PRESETS_READY("loading presets"),
+        PROFILES_ENABLED("enabling presets"),
+        RELOAD_DONE("reloading CMake");
+
+        private final String activity;
+
+        Stage(String activity) {
+            this.activity = activity;
+        }
+
+        /** What is going on while this stage is the next one to complete. */
+        public String getActivity() {
+            return activity;
+        }
+    }
+
+    /** Timed phases of a switch; a phase that did not run has no duration. */
+    public enum Phase {
+        VFS_LOOKUP("VFS lookup"),
+        CONFIGURE_FINGERPRINT("Configure fingerprint"),
+        LOAD_ACTION("LoadCMakeProject action"),
+        LOAD_RELOAD("Project load reload"),
+        PRESETS_LOAD("Load presets"),
+        PROFILES_ENABLE("Enable profiles"),
+        SCHEDULE_RELOAD("scheduleReload"),
+        RELOAD_WAIT("Reload completion"),
+        TOTAL("Total");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Project project;
+    private final CMakeMuxEntry entry;
+    private final CompletableFuture<CMakeMuxSwitch> future = new CompletableFuture<>();
+    private volatile @Nullable Stage completedStage;
+    private volatile long reloadMarker = -1;
+    private volatile int configureRuns = -1;
+    private volatile @Nullable String presetsFingerprint;
+    private volatile @Nullable String configureFingerprint;
+    private volatile boolean cancelled;
+    private volatile @Nullable CompletableFuture<?> pendingWait;
+    private final long startedNanos = System.nanoTime();
+    private final AtomicLongArray phaseNanos = newPhaseArray();
+
+    CMakeMuxSwitch(@NotNull Project project, @NotNull CMakeMuxEntry entry) {
+        this.project = project;
+        this.entry = entry;
+    }
+
+    public @NotNull Project getProject() {
+        return project;
+    }
+
+    public @NotNull CMakeMuxEntry getEntry() {
+        return entry;
+    }
+
+    /** Last completed stage, or null when nothing completed yet. */
+    public @Nullable Stage getCompletedStage() {
+        return completedStage;
+    }
+
+    /** The stage currently running, or null once the switch is over. */
+    public @Nullable Stage getRunningStage() {
+        if (future.isDone()) return null;
+        Stage done = completedStage;
+        Stage[] all = Stage.values();
+        return done == null ? all[0] : all[Math.min(done.ordinal() + 1, all.length - 1)];
+    }
+
+    /** Completes normally after {@link Stage#RELOAD_DONE}; exceptionally when a stage failed or was cancelled. */
+    public @NotNull CompletableFuture<CMakeMuxSwitch> getFuture() {
+        return future;
+    }
+
+    /** Duration of the phase in nanoseconds, or -1 when it did not run. */
+    public long getPhaseNanos(@NotNull Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    long getStartedNanos() {
+        return startedNanos;
+    }
+
+    void addPhaseNanos(@NotNull Phase phase, long nanos) {
+        phaseNanos.getAndUpdate(phase.ordinal(), v -> v < 0 ? nanos : v + nanos);
+    }
+
+    private static AtomicLongArray newPhaseArray() {
+        AtomicLongArray a = new AtomicLongArray(Phase.values().length);
+        for (int i = 0; i < a.length(); i++) a.set(i, -1);
+        return a;
+    }
+
+    /** CMake reloads started between loading the project and finishing, or -1 when unknown. */
+    public int getConfigureRuns() {
+        return configureRuns;
+    }
+
+    void setConfigureRuns(int configureRuns) {
+        this.configureRuns = configureRuns;
+    }
+
+    /** Fingerprint of the entry's presets inputs, computed while resolving the file. */
+    @Nullable String getPresetsFingerprint() {
+        return presetsFingerprint;
+    }
+
+    void setPresetsFingerprint(@Nullable String presetsFingerprint) {
+        this.presetsFingerprint = presetsFingerprint;
+    }
+
+    /** Fingerprint of the entry's configure inputs, computed while resolving the file. */
+    @Nullable String getConfigureFingerprint() {
+        return configureFingerprint;
+    }
+
+    void setConfigureFingerprint(@Nullable String configureFingerprint) {
+        this.configureFingerprint = configureFingerprint;
+    }
+
+    /** True when the configure inputs equal those of the entry's last successful switch. */
+    boolean isConfigureUnchanged() {
+        String fp = configureFingerprint;
+        if (fp == null) return false;
+        CMakeMuxLocalState.EntryData local = CMakeMuxLocalState.getInstance(project).find(entry.getPath());
+        return local != null && fp.equals(local.configureFingerprint);
+    }
+
+    long getReloadMarker() {
+        return reloadMarker;
+    }
+
+    void setReloadMarker(long reloadMarker) {
+        this.reloadMarker = reloadMarker;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /** True once a newer switch superseded this one; its remaining stages do not run. */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the switch at its next stage boundary and stops waiting for its reload, if any.
+     * A reload CLion already started keeps running; only this switch's further stages are skipped.
+     */
+    void cancel() {
+        cancelled = true;
+        CompletableFuture<?> wait = pendingWait;
+        if (wait != null) wait.cancel(false);
+    }
+
+    // The wait between stages that cancel() abandons
+    void setPendingWait(@NotNull CompletableFuture<?> wait) {
+        pendingWait = wait;
+        if (cancelled) wait.cancel(false);
+    }
+
+    void completed(@NotNull Stage stage) {
+        completedStage = stage;
+        publish();
+    }
+
+    void finish(@Nullable Throwable failure) {
+        boolean changed = failure == null ? future.complete(this) : future.completeExceptionally(failure);
+        if (changed) publish();
+    }
+
+    private void publish() {
+        if (project.isDisposed()) return;
+        project.getMessageBus().syncPublisher(CMakeMuxSwitchEvents.TOPIC).switchProgressed(this);
+    }
+}
@@ -0,0 +1,11 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.util.messages.Topic;
+
+public interface CMakeMuxSwitchEvents {
+    Topic<CMakeMuxSwitchEvents> TOPIC =
+            Topic.create("CMakeMux switch progressed", CMakeMuxSwitchEvents.class);
+
+    /** Called on any thread when a stage completed or the switch finished. */
+    void switchProgressed(CMakeMuxSwitch sw);
+}
@@ -0,0 +1,71 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.containers.CollectionFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/** Keeps the per-phase durations of the last {@link #HISTORY_SIZE} switches of each entry (in memory only). */
+@Service(Service.Level.PROJECT)
+public final class CMakeMuxSwitchMetrics {
+    static final int HISTORY_SIZE = 20;
+
+    /** One finished switch: phase durations in nanoseconds (-1 when the phase did not run). */
+    public record Sample(long[] phaseNanos, int configureRuns, boolean failed) {
+        public long get(@NotNull CMakeMuxSwitch.Phase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+    }
+
+    /** Statistics of one phase over the kept samples, in nanoseconds; -1 when no sample has the phase. */
+    public record PhaseStats(long last, long p50, long p95, int count) {
+    }
+
+    // Guarded by 'this'; keyed by entry path
+    private final Map<String, Deque<Sample>> samples = CollectionFactory.createFilePathMap();
+
+    public static CMakeMuxSwitchMetrics getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxSwitchMetrics.class);
+    }
+
+    void record(@NotNull CMakeMuxSwitch sw, boolean failed) {
+        long[] nanos = new long[CMakeMuxSwitch.Phase.values().length];
+        for (CMakeMuxSwitch.Phase phase : CMakeMuxSwitch.Phase.values()) {
+            nanos[phase.ordinal()] = sw.getPhaseNanos(phase);
+        }
+        Sample sample = new Sample(nanos, sw.getConfigureRuns(), failed);
+        synchronized (this) {
+            Deque<Sample> deque = samples.computeIfAbsent(sw.getEntry().getPath(), k -> new ArrayDeque<>());
+            if (deque.size() == HISTORY_SIZE) deque.removeFirst();
+            deque.addLast(sample);
+        }
+    }
+
+    /** Oldest first. */
+    public synchronized @NotNull List<Sample> getSamples(@Nullable String entryPath) {
+        Deque<Sample> deque = entryPath != null ? samples.get(entryPath) : null;
+        return deque != null ? new ArrayList<>(deque) : List.of();
+    }
+
+    public static @NotNull PhaseStats stats(@NotNull List<Sample> samples, @NotNull CMakeMuxSwitch.Phase phase) {
+        long[] values = samples.stream().mapToLong(s -> s.get(phase)).filter(v -> v >= 0).toArray();
+        if (values.length == 0) return new PhaseStats(-1, -1, -1, 0);
+        long last = values[values.length - 1];
+        Arrays.sort(values);
+        return new PhaseStats(last, percentile(values, 50), percentile(values, 95), values.length);
+    }
+
+    // Nearest-rank percentile of sorted values
+    private static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
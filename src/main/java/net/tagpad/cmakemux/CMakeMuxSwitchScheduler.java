@@ -0,0 +1,64 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Alarm;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Funnels switch requests from the UI into {@link CMakeMuxLoader}.
+ * Requests are debounced, so only the last of several rapid requests starts a switch,
+ * and every request supersedes the switch in flight: its remaining preset work and reloads are skipped.
+ * A configure that the superseded switch's LoadCMakeProject already started in CLion is not cancelled;
+ * it runs to completion (or is replaced by CLion) before the newer target is configured.
+ */
+@Service(Service.Level.PROJECT)
+public final class CMakeMuxSwitchScheduler implements Disposable {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxSwitchScheduler.class);
+
+    private static final int DEBOUNCE_MS = 200;
+
+    private final Project project;
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+
+    // Bumped by every request; a debounced start only runs if no newer request came in (EDT only)
+    private long generation;
+
+    public CMakeMuxSwitchScheduler(Project project) {
+        this.project = project;
+    }
+
+    public static CMakeMuxSwitchScheduler getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxSwitchScheduler.class);
+    }
+
+    /** Requests a switch to the entry (EDT). Earlier pending requests and the switch in flight are superseded. */
+    public void request(@NotNull CMakeMuxEntry entry) {
+        CMakeMuxSwitch current = CMakeMuxSelectionService.getInstance(project).getCurrentSwitch();
+        boolean inFlight = current != null && !current.isDone() && !current.isCancelled();
+        if (inFlight && alarm.isEmpty() && current.getEntry().getPath().equals(entry.getPath())) {
+            LOG.debug("[CMakeMux] Switch to '" + entry.getNickname() + "' already in progress.");
+            return;
+        }
+
+        long gen = ++generation;
+        if (inFlight) {
+            LOG.info("[CMakeMux] Superseding switch to '" + current.getEntry().getNickname() + "' by '" + entry.getNickname() + "'.");
+            current.cancel();
+        }
+        alarm.cancelAllRequests();
+        alarm.addRequest(() -> start(gen, entry), DEBOUNCE_MS);
+    }
+
+    private void start(long gen, CMakeMuxEntry entry) {
+        if (gen != generation || project.isDisposed()) return;
+        CMakeMuxLoader.loadEntry(project, entry);
+    }
+
+    @Override
+    public void dispose() {
+        // Pending requests die with the alarm; a switch in flight stops once it sees the project disposed
+    }
+}
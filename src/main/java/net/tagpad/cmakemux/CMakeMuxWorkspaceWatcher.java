@@ -0,0 +1,173 @@
+package net.tagpad.cmakemux;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns CLion's CMake workspace reload notifications into futures.
+ * Subscribes once per project; switch stages wait on {@link #awaitReload(long, long)} instead of sleeping.
+ * Every finished load also re-detects the active CMakeLists.txt in the background.
+ */
+@Service(Service.Level.PROJECT)
+public final class CMakeMuxWorkspaceWatcher implements Disposable {
+    private static final Logger LOG = Logger.getInstance(CMakeMuxWorkspaceWatcher.class);
+
+    // Upper bound for a started reload to finish, in case its finish notification never arrives
+    private static final long FINISH_TIMEOUT_MS = 30 * 60 * 1000;
+
+    private final Project project;
+    private final boolean available;
+
+    // Guarded by 'this'
+    private long startedCount;
+    private long finishedCount;
+    private boolean reloading;
+    // The running reload's CMake process exited with an error
+    private boolean configureFailed;
+    // Whether the last reload that finished in this session succeeded; false until one has
+    private boolean lastReloadSucceeded;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    public CMakeMuxWorkspaceWatcher(Project project) {
+        this.project = project;
+        this.available = CMakeMuxClionBridge.getInstance().subscribeWorkspaceListener(project, this,
+                new CMakeMuxClionBridge.WorkspaceListener() {
+                    @Override
+                    public void reloadingStarted() {
+                        onReloadingStarted();
+                    }
+
+                    @Override
+                    public void reloadingFinished(boolean canceled) {
+                        onReloadingFinished(canceled);
+                    }
+
+                    @Override
+                    public void configureFailed() {
+                        synchronized (CMakeMuxWorkspaceWatcher.this) {
+                            configureFailed = true;
+                        }
+                    }
+                });
+        if (!available) {
+            LOG.warn("[CMakeMux] CMake workspace notifications unavailable; switch stages will not wait for reloads.");
+        }
+        // The workspace may have loaded before we subscribed
+        detectActive("subscribe");
+    }
+
+    public static CMakeMuxWorkspaceWatcher getInstance(@NotNull Project project) {
+        return project.getService(CMakeMuxWorkspaceWatcher.class);
+    }
+
+    /** True when CLion's workspace listener could be subscribed. */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /** Number of reloads started so far; use as a marker for {@link #awaitReload(long, long)}. */
+    public synchronized long getStartedCount() {
+        return startedCount;
+    }
+
+    public synchronized boolean isReloading() {
+        return reloading;
+    }
+
+    /**
+     * True when a CMake reload finished in this IDE session and the last one to finish succeeded: it was not canceled
+     * and its CMake process did not exit with an error (on CLion versions that report the exit; otherwise only the former).
+     */
+    public synchronized boolean isLastReloadSucceeded() {
+        return lastReloadSucceeded;
+    }
+
+    /**
+     * Completes when a reload started after {@code marker} finishes: {@code true} on success,
+     * {@code false} when it was canceled or its CMake process failed, when nothing started within {@code startTimeoutMs},
+     * when it did not finish within {@link #FINISH_TIMEOUT_MS}, or when notifications are unavailable.
+     */
+    public CompletableFuture<Boolean> awaitReload(long marker, long startTimeoutMs) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        if (!available) {
+            future.complete(false);
+            return future;
+        }
+        synchronized (this) {
+            // The reload may have started and finished before this await was chained
+            if (finishedCount > marker) {
+                future.complete(lastReloadSucceeded);
+                return future;
+            }
+            waiters.add(new Waiter(marker, future));
+        }
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            synchronized (this) {
+                if (startedCount > marker) return; // a reload is under way; wait for it to finish
+            }
+            if (future.complete(false)) {
+                LOG.debug("[CMakeMux] No CMake reload started within " + startTimeoutMs + " ms.");
+            }
+        }, startTimeoutMs, TimeUnit.MILLISECONDS);
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            if (future.complete(false)) {
+                LOG.warn("[CMakeMux] CMake reload did not report finishing within " + FINISH_TIMEOUT_MS / 60_000 + " minutes, giving up on it.");
+            }
+        }, startTimeoutMs + FINISH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private void onReloadingStarted() {
+        synchronized (this) {
+            startedCount++;
+            reloading = true;
+            configureFailed = false;
+        }
+    }
+
+    private void onReloadingFinished(boolean canceled) {
+        List<Waiter> done = new ArrayList<>();
+        boolean succeeded;
+        synchronized (this) {
+            finishedCount++;
+            reloading = false;
+            succeeded = !canceled && !configureFailed;
+            lastReloadSucceeded = succeeded;
+            waiters.removeIf(w -> {
+                if (w.future.isDone()) return true;
+                if (startedCount <= w.marker) return false;
+                done.add(w);
+                return true;
+            });
+        }
+        // Complete outside the lock; dependents may chain further awaits
+        for (Waiter w : done) w.future.complete(succeeded);
+        if (!canceled) detectActive("reload");
+    }
+
+    private void detectActive(String trigger) {
+        AppExecutorUtil.getAppExecutorService().execute(() -> CMakeMuxActiveDetector.detectAndSetActive(project, trigger));
+    }
+
+    @Override
+    public void dispose() {
+        List<Waiter> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Waiter w : pending) w.future.cancel(false);
+    }
+
+    private record Waiter(long marker, CompletableFuture<Boolean> future) {
+    }
+}